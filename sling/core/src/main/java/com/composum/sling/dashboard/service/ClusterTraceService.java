@@ -0,0 +1,488 @@
+package com.composum.sling.dashboard.service;
+
+import com.composum.sling.dashboard.servlet.ConfigurationConstants;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.wrappers.ValueMapDecorator;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.ConfigurationPolicy;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.AttributeType;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * a trace service which aggregates the traces of several Sling instances; the incremental JSON feeds of the
+ * trace widgets of the nodes ('trace.json?trace={name}&since={sequence}') are polled in parallel, the new entries
+ * of all nodes are inserted in the order of their timestamp into the entries of this service
+ */
+@Component(
+        service = {TraceService.class},
+        configurationPolicy = ConfigurationPolicy.REQUIRE, immediate = true
+)
+@Designate(ocd = ClusterTraceService.Config.class, factory = true)
+public class ClusterTraceService implements TraceService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ClusterTraceService.class);
+
+    protected static final Gson GSON = new Gson();
+
+    @ObjectClassDefinition(name = "Composum Dashboard Cluster Trace Service")
+    @interface Config {
+
+        @AttributeDefinition(name = ConfigurationConstants.CFG_NAME_NAME, description = ConfigurationConstants.CFG_NAME_DESCRIPTION)
+        String name() default "cluster";
+
+        @AttributeDefinition(name = ConfigurationConstants.CFG_LABEL_NAME, description = ConfigurationConstants.CFG_LABEL_DESCRIPTION)
+        String label() default "Cluster";
+
+        @AttributeDefinition(name = "Nodes",
+                description = "the trace feeds of the nodes to aggregate: 'label=url' with the URL of the JSON feed, "
+                        + "e.g. 'author=http://author:4502/apps/cpm/trace.json?trace=default'")
+        String[] nodes();
+
+        @AttributeDefinition(name = "Authorization", type = AttributeType.PASSWORD,
+                description = "the value of the 'Authorization' header of the feed requests (e.g. 'Basic ...'); "
+                        + "a secret - use a technical user with read access to the trace feeds only and keep "
+                        + "the value out of versioned configuration files (e.g. via a secret placeholder)")
+        String authorization();
+
+        @AttributeDefinition(name = "Poll Interval", description = "the interval (seconds) to poll the feeds")
+        int pollInterval() default 5;
+
+        @AttributeDefinition(name = "Timeout", description = "the max time (milliseconds) to wait for a feed")
+        int timeout() default 3000;
+
+        @AttributeDefinition(name = "Trace Max")
+        int traceMax() default 200;
+
+        @AttributeDefinition(name = "Time Format")
+        String timeFormat() default DefaultTraceService.DEFAULT_TIME_FORMAT;
+
+        @AttributeDefinition(name = ConfigurationConstants.CFG_RANK_NAME, description = ConfigurationConstants.CFG_RANK_DESCRIPTION)
+        int rank() default 2000;
+    }
+
+    /**
+     * an entry received from a node, the message is prefixed by the nodes label
+     */
+    protected class ClusterEntry implements TraceEntry {
+
+        private final long sequence;
+        private final long timestamp;
+        private final Level level;
+        private final Node node;
+        private final String reference;
+        private final String message;
+        private final JsonObject json;
+
+        private transient ValueMap properties;
+
+        protected ClusterEntry(@NotNull final Node node, @NotNull final JsonObject json) {
+            this.sequence = sequenceCounter.incrementAndGet();
+            this.node = node;
+            this.json = json;
+            this.timestamp = json.get("timestamp").getAsLong();
+            this.level = Level.valueOf(json.get("level").getAsString().toUpperCase());
+            final JsonElement reference = json.get("reference");
+            this.reference = reference != null && !reference.isJsonNull() ? reference.getAsString() : null;
+            this.message = "[" + node.label + "] " + json.get("message").getAsString();
+        }
+
+        @Override
+        public long getSequence() {
+            return sequence;
+        }
+
+        @Override
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        @Override
+        public @NotNull Date getTime() {
+            return new Date(timestamp);
+        }
+
+        @Override
+        public @NotNull Level getLevel() {
+            return level;
+        }
+
+        @Override
+        public int getCount() {
+            final JsonElement count = json.get("count");
+            return count != null ? count.getAsInt() : 1;
+        }
+
+        @Override
+        public long getLastTimestamp() {
+            final JsonElement lastTimestamp = json.get("lastTimestamp");
+            return lastTimestamp != null ? lastTimestamp.getAsLong() : getTimestamp();
+        }
+
+        @Override
+        public @Nullable String getReference() {
+            return reference;
+        }
+
+        @Override
+        public @NotNull String getMessage() {
+            return message;
+        }
+
+        @Override
+        public @Nullable <T> T getProperty(@NotNull String name, T defaultValue) {
+            return getProperties().get(name, defaultValue);
+        }
+
+        @SuppressWarnings("unchecked")
+        protected @NotNull ValueMap getProperties() {
+            if (properties == null) {
+                final JsonElement element = json.get("properties");
+                final Map<String, Object> map = element != null && element.isJsonObject()
+                        ? GSON.fromJson(element, Map.class) : Collections.emptyMap();
+                properties = new ValueMapDecorator(map);
+            }
+            return properties;
+        }
+
+        @Override
+        public void toJson(@NotNull JsonWriter writer) throws IOException {
+            writer.beginObject();
+            writer.name("sequence").value(getSequence());
+            writer.name("timestamp").value(getTimestamp());
+            writer.name("time").value(timeFormatter.format(Instant.ofEpochMilli(getTimestamp())));
+            writer.name("node").value(node.label);
+            writer.name("level").value(getLevel().name().toLowerCase());
+            writer.name("message").value(getMessage());
+            if (getCount() > 1) {
+                writer.name("count").value(getCount());
+                writer.name("lastTimestamp").value(getLastTimestamp());
+                writer.name("lastTime").value(timeFormatter.format(Instant.ofEpochMilli(getLastTimestamp())));
+            }
+            if (reference != null) {
+                writer.name("reference").value(reference);
+            }
+            final JsonElement properties = json.get("properties");
+            if (properties != null && properties.isJsonObject()) {
+                writer.name("properties");
+                GSON.toJson(properties, writer);
+            }
+            writer.endObject();
+        }
+    }
+
+    /**
+     * a node of the cluster with the cursor of its feed
+     */
+    protected static class Node {
+
+        protected final String label;
+        protected final String url;
+        protected long cursor;
+        /** set if the last feed has been reset by the node (e.g. restarted), the entries are received again */
+        protected boolean reset;
+
+        protected Node(@NotNull final String label, @NotNull final String url) {
+            this.label = label;
+            this.url = url;
+        }
+
+        protected @NotNull URI getUri() {
+            return URI.create(url + (url.contains("?") ? "&" : "?") + "since=" + cursor);
+        }
+    }
+
+    protected String name;
+    protected String label;
+    protected int rank;
+    protected String authorization;
+    protected long timeout;
+    protected DateTimeFormatter timeFormatter;
+    protected volatile List<Node> nodes = Collections.emptyList();
+
+    protected int traceMax;
+
+    protected final AtomicLong sequenceCounter = new AtomicLong();
+    /** the entries in the order of their timestamp, replaced by each poll which has received new entries */
+    protected volatile List<ClusterEntry> entries = Collections.emptyList();
+    protected final AtomicIntegerArray levelCounts = new AtomicIntegerArray(Level.values().length);
+
+    protected final List<TraceListener> listeners = new CopyOnWriteArrayList<>();
+
+    protected HttpClient httpClient;
+    protected ScheduledExecutorService poller;
+
+    @Activate
+    @Modified
+    protected void activate(Config config) {
+        deactivate();
+        name = config.name();
+        label = config.label();
+        rank = config.rank();
+        authorization = config.authorization();
+        timeout = Math.max(config.timeout(), 100);
+        try {
+            timeFormatter = DateTimeFormatter.ofPattern(config.timeFormat()).withZone(ZoneId.systemDefault());
+        } catch (IllegalArgumentException ex) {
+            timeFormatter = DateTimeFormatter.ofPattern(DefaultTraceService.DEFAULT_TIME_FORMAT)
+                    .withZone(ZoneId.systemDefault());
+        }
+        final List<Node> nodes = new ArrayList<>();
+        if (config.nodes() != null) {
+            for (final String node : config.nodes()) {
+                if (StringUtils.isNotBlank(node) && node.contains("=")) {
+                    nodes.add(new Node(StringUtils.substringBefore(node, "=").trim(),
+                            StringUtils.substringAfter(node, "=").trim()));
+                }
+            }
+        }
+        this.nodes = nodes;
+        traceMax = Math.min(Math.max(0, config.traceMax()), 10000);
+        entries = Collections.emptyList();
+        for (int i = 0; i < levelCounts.length(); i++) {
+            levelCounts.set(i, 0);
+        }
+        // the client and its connections are kept on a configuration change if the connect timeout is unchanged
+        if (httpClient == null || !httpClient.connectTimeout().equals(Optional.of(Duration.ofMillis(timeout)))) {
+            httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofMillis(timeout)).build();
+        }
+        if (!nodes.isEmpty()) {
+            poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "trace-cluster-" + name);
+                thread.setDaemon(true);
+                return thread;
+            });
+            poller.scheduleWithFixedDelay(this::poll, 0L, Math.max(config.pollInterval(), 1), TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * stops the poller and waits for the end of a running poll, which is limited by the request timeout
+     */
+    @Deactivate
+    protected void deactivate() {
+        if (poller != null) {
+            poller.shutdownNow();
+            try {
+                if (!poller.awaitTermination(timeout * 2, TimeUnit.MILLISECONDS)) {
+                    LOG.warn("the poll of the trace cluster '{}' is still running", name);
+                }
+            } catch (InterruptedException ignore) {
+                Thread.currentThread().interrupt();
+            }
+            poller = null;
+        }
+    }
+
+    /**
+     * requests the feeds of all nodes in parallel and inserts the new entries ordered by their timestamp; a node
+     * which doesn't answer in time is asked again (with the same cursor) by the next poll
+     */
+    protected void poll() {
+        final List<Node> nodes = this.nodes;
+        final List<CompletableFuture<List<ClusterEntry>>> requests = new ArrayList<>();
+        for (final Node node : nodes) {
+            node.reset = false;
+            final HttpRequest.Builder request = HttpRequest.newBuilder(node.getUri())
+                    .timeout(Duration.ofMillis(timeout)).GET();
+            if (StringUtils.isNotBlank(authorization)) {
+                request.header("Authorization", authorization);
+            }
+            requests.add(httpClient.sendAsync(request.build(), HttpResponse.BodyHandlers.ofString())
+                    .thenApply(response -> receive(node, response))
+                    .exceptionally(ex -> {
+                        LOG.warn("trace feed of '{}' not available: {}", node.label, ex.toString());
+                        return Collections.emptyList();
+                    }));
+        }
+        final List<ClusterEntry> received = new ArrayList<>();
+        for (final CompletableFuture<List<ClusterEntry>> request : requests) {
+            received.addAll(request.join()); // each request is limited by the timeout
+        }
+        received.sort(Comparator.comparingLong(ClusterEntry::getTimestamp));
+        // the configuration has been changed meanwhile if the nodes are replaced, the result is outdated then
+        if (nodes == this.nodes) {
+            final Set<Node> reset = new HashSet<>();
+            for (final Node node : nodes) {
+                if (node.reset) {
+                    reset.add(node);
+                }
+            }
+            insert(received, reset);
+        }
+    }
+
+    protected @NotNull List<ClusterEntry> receive(@NotNull final Node node, @NotNull final HttpResponse<String> response) {
+        final List<ClusterEntry> result = new ArrayList<>();
+        if (response.statusCode() != 200) {
+            LOG.warn("trace feed of '{}' answered {}", node.label, response.statusCode());
+            return result;
+        }
+        try {
+            final JsonObject feed = new JsonParser().parse(response.body()).getAsJsonObject();
+            for (final JsonElement element : feed.getAsJsonArray("entries")) {
+                try {
+                    result.add(new ClusterEntry(node, element.getAsJsonObject()));
+                } catch (IllegalStateException | IllegalArgumentException | NullPointerException ex) {
+                    LOG.debug("invalid trace entry of '{}': {}", node.label, ex.toString());
+                }
+            }
+            final JsonElement reset = feed.get("reset");
+            node.reset = reset != null && reset.getAsBoolean();
+            node.cursor = feed.get("sequence").getAsLong();
+        } catch (JsonParseException | IllegalStateException | NullPointerException ex) {
+            LOG.warn("invalid trace feed of '{}': {}", node.label, ex.toString());
+            result.clear();
+        }
+        return result;
+    }
+
+    /**
+     * merges the received entries (sorted by their timestamp) into the entries of the service; entries of a node
+     * which has answered late are inserted before the newer entries of the other nodes, the oldest entries are
+     * dropped if the max number of entries is exceeded; the entries of the nodes which have reset their feed
+     * are replaced by the received ones; called by the poller only
+     */
+    protected void insert(@NotNull final List<ClusterEntry> received, @NotNull final Set<Node> reset) {
+        if (received.isEmpty() && reset.isEmpty()) {
+            return;
+        }
+        final List<ClusterEntry> current = new ArrayList<>(entries);
+        current.removeIf(entry -> reset.contains(entry.node));
+        final List<ClusterEntry> merged = new ArrayList<>(current.size() + received.size());
+        int index = 0;
+        for (final ClusterEntry entry : received) {
+            while (index < current.size() && current.get(index).getTimestamp() <= entry.getTimestamp()) {
+                merged.add(current.get(index++));
+            }
+            merged.add(entry);
+        }
+        merged.addAll(current.subList(index, current.size()));
+        final List<ClusterEntry> retained = new ArrayList<>(
+                merged.subList(Math.max(merged.size() - traceMax, 0), merged.size()));
+        final int[] counts = new int[levelCounts.length()];
+        for (final ClusterEntry entry : retained) {
+            counts[entry.getLevel().ordinal()]++;
+        }
+        for (int i = 0; i < counts.length; i++) {
+            levelCounts.set(i, counts[i]);
+        }
+        entries = Collections.unmodifiableList(retained);
+        for (final ClusterEntry entry : received) {
+            for (final TraceListener listener : listeners) {
+                try {
+                    listener.onEntry(this, entry);
+                } catch (RuntimeException ex) {
+                    LOG.error(ex.getMessage(), ex);
+                }
+            }
+        }
+    }
+
+    @Override
+    public @NotNull String getName() {
+        return name;
+    }
+
+    @Override
+    public @NotNull String getLabel() {
+        return StringUtils.isNotBlank(label) ? label : getName();
+    }
+
+    @Override
+    public int getRank() {
+        return rank;
+    }
+
+    /**
+     * the cluster trace shows the entries of the nodes only, local entries are not accepted
+     */
+    @Override
+    public void trace(@NotNull Level level, @Nullable String reference, @NotNull String message, Object... args) {
+    }
+
+    @Override
+    public @NotNull Iterable<TraceEntry> getEntries(@Nullable Level level) {
+        final List<TraceEntry> result = new ArrayList<>();
+        for (final ClusterEntry entry : entries) {
+            if (level == null || entry.getLevel().compareTo(level) >= 0) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public @NotNull Iterable<TraceEntry> getEntriesSince(long sequence) {
+        final List<TraceEntry> result = new ArrayList<>();
+        for (final ClusterEntry entry : entries) {
+            if (entry.getSequence() > sequence) {
+                result.add(entry);
+            }
+        }
+        // the entries are ordered by their timestamp, an entry received late can have a higher sequence
+        result.sort(Comparator.comparingLong(TraceEntry::getSequence));
+        return result;
+    }
+
+    @Override
+    public int getNumber(@NotNull Level level) {
+        return Math.max(levelCounts.get(level.ordinal()), 0);
+    }
+
+    @Override
+    public int getMaxEntries() {
+        return traceMax;
+    }
+
+    @Override
+    public boolean addListener(@NotNull final TraceListener listener) {
+        return listeners.add(listener);
+    }
+
+    @Override
+    public void removeListener(@NotNull final TraceListener listener) {
+        listeners.remove(listener);
+    }
+}
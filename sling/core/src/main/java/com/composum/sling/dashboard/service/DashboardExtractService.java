@@ -1,9 +1,11 @@
 package com.composum.sling.dashboard.service;
 
+import com.composum.sling.dashboard.util.PathSet;
 import com.google.gson.stream.JsonWriter;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.resource.LoginException;
 import org.apache.sling.api.resource.ModifiableValueMap;
 import org.apache.sling.api.resource.PersistenceException;
 import org.apache.sling.api.resource.Resource;
@@ -31,10 +33,15 @@ import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -43,6 +50,12 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.Stack;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -80,7 +93,7 @@ public class DashboardExtractService implements ResourceExtractService {
         protected final ZipOutputStream zipStream;
         protected Map<Pattern, List<String>> additionalZipEntries;
 
-        private final Set<String> entryResourceSet = new TreeSet<>();
+        private final Set<String> entryResourceSet = new PathSet();
 
         public SourceZipExtractor(@NotNull final ResourceExtractConfig config,
                                   @Nullable final Pattern targetFilter,
@@ -101,6 +114,11 @@ public class DashboardExtractService implements ResourceExtractService {
             }
         }
 
+        @Override
+        public boolean isMappedToTarget() {
+            return mapToTarget;
+        }
+
         @Override
         public void close() throws IOException {
             zipStream.flush();
@@ -274,7 +292,8 @@ public class DashboardExtractService implements ResourceExtractService {
         protected final JsonWriter jsonWriter;
         protected final Stack<String> openPath = new Stack<>();
 
-        private final Set<String> entryResourceSet = new TreeSet<>();
+        /** the written paths, the subtrees of the closed objects are collapsed (can't be written again) */
+        private final PathSet entryResourceSet = new PathSet();
 
         public SourceJsonExtractor(@NotNull final ResourceExtractConfig config,
                                    @Nullable final Pattern targetFilter,
@@ -287,6 +306,11 @@ public class DashboardExtractService implements ResourceExtractService {
             this.jsonWriter = new JsonWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
         }
 
+        @Override
+        public boolean isMappedToTarget() {
+            return mapToTarget;
+        }
+
         @Override
         public void close() throws IOException {
             while (!openPath.isEmpty()) {
@@ -311,9 +335,9 @@ public class DashboardExtractService implements ResourceExtractService {
             }
             String targetParentPath = StringUtils.substringBeforeLast(targetPath, "/");
             while (!openPath.isEmpty() && StringUtils.isNotBlank(targetParentPath)
-                    && !targetParentPath.startsWith(openPath.peek())) {
+                    && !isSameOrAncestor(openPath.peek(), targetParentPath)) {
                 jsonWriter.endObject();
-                openPath.pop();
+                entryResourceSet.collapse(openPath.pop());
             }
             if (!"/".equals(targetPath) && !entryResourceSet.contains(targetParentPath)) {
                 extract(source != null ? source.getParent() : null,
@@ -322,6 +346,10 @@ public class DashboardExtractService implements ResourceExtractService {
             extractResource(source, StringUtils.isBlank(targetPath) ? "/" : targetPath);
         }
 
+        protected boolean isSameOrAncestor(@NotNull final String ancestor, @NotNull final String path) {
+            return "/".equals(ancestor) || path.equals(ancestor) || path.startsWith(ancestor + "/");
+        }
+
         /**
          * extract on single resource as XML source file added to the ZIP stream if not already added
          *
@@ -332,7 +360,10 @@ public class DashboardExtractService implements ResourceExtractService {
         public void extractResource(@Nullable final Resource source, @NotNull final String targetPath)
                 throws IOException {
             if (entryResourceSet.contains(targetPath)) {
-                return; // skip this resource if already added to the ZIP
+                if (entryResourceSet.isCollapsedBelow(targetPath)) {
+                    LOG.warn("extractResource({}): skipped, the parent object is closed already", targetPath);
+                }
+                return; // skip this resource if already written
             }
             entryResourceSet.add(targetPath);
             final String jsonName = StringUtils.substringAfterLast(targetPath, "/");
@@ -365,57 +396,111 @@ public class DashboardExtractService implements ResourceExtractService {
     }
 
     /**
-     * the extractor to generate an isolated cope of the source at the target destination
+     * the extractor to generate an isolated cope of the source at the target destination; the changes are
+     * committed in batches (if configured) together with a checkpoint of the source paths completed so far,
+     * a repeated copy of the same extraction (after an interruption) skips the completed sources
      */
     protected class CopyToTargetExtractor implements Extractor {
 
+        public static final String PN_PATHS = "paths";
+
         public final Mode mode;
         public final boolean dryRun;
         public final DashboardExtractSession session;
-
-        public CopyToTargetExtractor(@Nullable final Mode mode, boolean dryRun,
+        protected final int commitNodes;
+        protected final long commitBytes;
+        protected final String checkpointPath;
+
+        /** the sources completed by a previous run, each one is removed if skipped by this run */
+        protected final PathSet completed = new PathSet();
+        protected final List<String> completedSinceCommit = new ArrayList<>();
+        protected int batchCount = 0;
+        protected int changedNodes = 0;
+        protected long changedBytes = 0;
+        protected boolean failed = false;
+
+        public CopyToTargetExtractor(@NotNull final ResourceExtractConfig config,
+                                     @Nullable final Mode mode, boolean dryRun,
                                      @NotNull final ExtractSession session) {
             this.mode = mode != null ? mode : Mode.MERGE;
             this.dryRun = dryRun;
             this.session = (DashboardExtractSession) session;
+            commitNodes = config.commitNodes();
+            commitBytes = config.commitBytes();
+            checkpointPath = !dryRun && (commitNodes > 0 || commitBytes > 0)
+                    && StringUtils.isNotBlank(config.checkpointPath())
+                    ? config.checkpointPath() + "/" + getCheckpointName() : null;
+            loadCheckpoint();
         }
 
         @Override
         public void close() throws IOException {
             if (!dryRun) {
-                session.resolver.commit();
+                if (failed) {
+                    // the checkpoint of the last commit is kept to resume the copy
+                    session.resolver.revert();
+                } else {
+                    if (checkpointPath != null) {
+                        final Resource checkpoint = session.resolver.getResource(checkpointPath);
+                        if (checkpoint != null) {
+                            session.resolver.delete(checkpoint);
+                        }
+                    }
+                    session.resolver.commit();
+                }
             }
         }
 
         @Override
         public void extract(@NotNull Resource source, @NotNull String targetPath)
                 throws PersistenceException {
-            final Resource parent = provideParent(source, targetPath);
-            copyResource(source, parent, source.getName(), 0);
+            if (completed.remove(source.getPath())) {
+                LOG.info("extract({},{}): completed already", source.getPath(), targetPath);
+                return;
+            }
+            boolean success = false;
+            try {
+                final Resource parent = provideParent(source, targetPath);
+                copyResource(source, parent, source.getName(), 0);
+                completedSinceCommit.add(source.getPath());
+                success = true;
+            } finally {
+                if (!success) {
+                    failed = true;
+                }
+            }
         }
 
         protected Resource copyResource(@NotNull final Resource source,
                                         @NotNull final Resource parent, @NotNull final String name, final int depth)
                 throws PersistenceException {
             Resource target = parent.getChild(name);
+            final Map<String, Object> properties;
             if (target == null || mode == Mode.REPLACE) {
                 if (target != null) {
                     session.resolver.delete(target);
                 }
                 LOG.info("copyResource({},{},{}).create", source.getPath(), parent.getPath(), name);
-                target = session.resolver.create(parent, name,
-                        session.copyProperties(source, null, session::adjustProperty));
+                properties = session.copyProperties(source, null, session::adjustProperty);
+                target = session.resolver.create(parent, name, properties);
             } else {
                 final ModifiableValueMap targetProps = target.adaptTo(ModifiableValueMap.class);
+                properties = session.copyProperties(source,
+                        mode == Mode.UPDATE ? null : targetProps,
+                        session::adjustProperty);
                 if (targetProps != null) {
-                    targetProps.putAll(session.copyProperties(source,
-                            mode == Mode.UPDATE ? null : targetProps,
-                            session::adjustProperty));
+                    targetProps.putAll(properties);
                 }
             }
+            changed(properties);
+            PathMappingRule pathMappingRule = null;
+            boolean ruleResolved = false;
             for (final Resource child : source.getChildren()) {
                 if (session.isAllowedResource(child)) {
-                    final PathMappingRule pathMappingRule = session.getPathRule(source.getPath(), source);
+                    if (!ruleResolved) { // the same rule for all children, resolved on demand once
+                        pathMappingRule = session.getPathRule(source.getPath(), source);
+                        ruleResolved = true;
+                    }
                     if (child.getPath().matches("^.*/" + JCR_CONTENT + "(/.*)?$")
                             || (pathMappingRule != null
                             && (pathMappingRule.maxDepth == null || depth + 1 < pathMappingRule.maxDepth))) {
@@ -437,8 +522,10 @@ public class DashboardExtractService implements ResourceExtractService {
                     final String parentName = StringUtils.substringAfterLast(parentPath, "/");
                     LOG.info("provideParent({},{}).create({},{})",
                             source.getPath(), targetPath, parentParent.getPath(), parentName);
-                    parent = session.resolver.create(parentParent, parentName,
-                            session.copyProperties(sourceParent, null, session::adjustProperty));
+                    final Map<String, Object> properties =
+                            session.copyProperties(sourceParent, null, session::adjustProperty);
+                    parent = session.resolver.create(parentParent, parentName, properties);
+                    changed(properties);
                     final Resource sourceParentContent = sourceParent.getChild(JCR_CONTENT);
                     if (sourceParentContent != null) {
                         copyResource(sourceParentContent, parent, JCR_CONTENT, 0);
@@ -450,24 +537,194 @@ public class DashboardExtractService implements ResourceExtractService {
             }
             return parent;
         }
+
+        // batch commits
+
+        /**
+         * counts a changed resource and commits the changes if a batch limit is reached
+         */
+        protected void changed(@NotNull final Map<String, Object> properties) throws PersistenceException {
+            changedNodes++;
+            for (final Object value : properties.values()) {
+                changedBytes += estimateSize(value);
+            }
+            if (!dryRun && ((commitNodes > 0 && changedNodes >= commitNodes)
+                    || (commitBytes > 0 && changedBytes >= commitBytes))) {
+                commitBatch();
+            }
+        }
+
+        /**
+         * commits the changes together with the checkpoint of the source paths completed since the last commit
+         */
+        protected void commitBatch() throws PersistenceException {
+            if (checkpointPath != null && !completedSinceCommit.isEmpty()) {
+                final Resource checkpoint = ResourceUtil.getOrCreateResource(session.resolver, checkpointPath,
+                        Collections.singletonMap(JCR_PRIMARY_TYPE, NT_UNSTRUCTURED), NT_UNSTRUCTURED, false);
+                final Map<String, Object> properties = new HashMap<>();
+                properties.put(JCR_PRIMARY_TYPE, NT_UNSTRUCTURED);
+                properties.put(PN_PATHS, completedSinceCommit.toArray(new String[0]));
+                session.resolver.create(checkpoint, "batch-" + (++batchCount), properties);
+            }
+            LOG.info("commitBatch({}): {} resources, {} bytes, {} sources completed",
+                    batchCount, changedNodes, changedBytes, completedSinceCommit.size());
+            session.resolver.commit();
+            completedSinceCommit.clear();
+            changedNodes = 0;
+            changedBytes = 0;
+        }
+
+        /**
+         * @return the estimated size of a property value; binaries are streamed and not counted
+         */
+        protected long estimateSize(@Nullable final Object value) {
+            if (value instanceof CharSequence) {
+                return ((CharSequence) value).length() * 2L;
+            } else if (value instanceof Object[]) {
+                long size = 0;
+                for (final Object item : (Object[]) value) {
+                    size += estimateSize(item);
+                }
+                return size;
+            }
+            return value instanceof InputStream || value == null ? 0 : 8;
+        }
+
+        /**
+         * loads the source paths completed by a previous (interrupted) run of the same copy
+         */
+        protected void loadCheckpoint() {
+            final Resource checkpoint = checkpointPath != null ? session.resolver.getResource(checkpointPath) : null;
+            if (checkpoint != null) {
+                for (final Resource batch : checkpoint.getChildren()) {
+                    completed.addAll(Arrays.asList(batch.getValueMap().get(PN_PATHS, new String[0])));
+                    batchCount++;
+                }
+                LOG.info("loadCheckpoint({}): {} sources completed", checkpointPath, completed.size());
+            }
+        }
+
+        /**
+         * @return a name which identifies the copy by the mode and the source to target mapping
+         */
+        protected @NotNull String getCheckpointName() {
+            try {
+                final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                digest.update(mode.name().getBytes(StandardCharsets.UTF_8));
+                for (final String sourcePath : session.getSourcePathSet()) {
+                    digest.update(("\n" + sourcePath + "=" + session.getTargetPath(sourcePath))
+                            .getBytes(StandardCharsets.UTF_8));
+                }
+                final StringBuilder name = new StringBuilder();
+                for (final byte b : digest.digest()) {
+                    name.append(String.format("%02x", b));
+                }
+                return name.toString();
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    }
+
+    /**
+     * the scan result of one resource: the parent path, the matching path mapping rule and
+     * the path references found in the resource content covered by this rule
+     */
+    protected static class ScanNode {
+
+        public static final ScanNode MISSING = new ScanNode();
+
+        public final boolean exists;
+        public final String parentPath;
+        public final PathMappingRule rule;
+        public final List<String> references;
+
+        protected ScanNode(@Nullable final String parentPath, @Nullable final PathMappingRule rule,
+                           @NotNull final List<String> references) {
+            this.exists = true;
+            this.parentPath = parentPath;
+            this.rule = rule;
+            this.references = references;
+        }
+
+        private ScanNode() {
+            exists = false;
+            parentPath = null;
+            rule = null;
+            references = Collections.emptyList();
+        }
+    }
+
+    /**
+     * an index of path mapping rules by the literal prefixes of their source path patterns (a character trie);
+     * a lookup evaluates only the source path patterns of the rules with a prefix of the path
+     */
+    protected static class PathRuleIndex {
+
+        protected static class Node {
+
+            protected final Map<Character, Node> children = new HashMap<>();
+            protected final BitSet rules = new BitSet();
+        }
+
+        protected final List<PathMappingRule> ruleSet;
+        protected final Node root = new Node();
+
+        protected PathRuleIndex(@NotNull final List<PathMappingRule> ruleSet) {
+            this.ruleSet = ruleSet;
+            for (int i = 0; i < ruleSet.size(); i++) {
+                Node node = root;
+                for (final char c : ruleSet.get(i).sourcePathPrefix.toCharArray()) {
+                    node = node.children.computeIfAbsent(c, key -> new Node());
+                }
+                node.rules.set(i);
+            }
+        }
+
+        /**
+         * @return the rules with a source path pattern matching the path in the order of the rule set
+         */
+        protected @NotNull List<PathMappingRule> getRules(@NotNull final String path) {
+            final BitSet candidates = (BitSet) root.rules.clone();
+            Node node = root;
+            for (int i = 0; i < path.length() && (node = node.children.get(path.charAt(i))) != null; i++) {
+                candidates.or(node.rules);
+            }
+            List<PathMappingRule> rules = Collections.emptyList();
+            for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+                final PathMappingRule rule = ruleSet.get(i);
+                if (rule.sourcePathPattern.matcher(path).matches()) {
+                    if (rules.isEmpty()) {
+                        rules = new ArrayList<>();
+                    }
+                    rules.add(rule);
+                }
+            }
+            return rules;
+        }
     }
 
     protected class DashboardExtractSession implements ExtractSession, ResourceFilter {
 
         public final String[] predefinedPaths;
         public final List<PathMappingRule> pathMappingRuleSet;
+        protected final PathRuleIndex pathRuleIndex;
         protected List<Pattern> ignoredChildren;
         protected List<Pattern> ignoredProperties;
 
         public final ResourceResolver resolver;
         public final int levelMax;
-        public final TreeSet<String> sourcePathSet;
-        public final TreeSet<String> targetPathSet;
+        public final int scanThreads;
+        public final PathSet sourcePathSet;
+        public final PathSet targetPathSet;
         public final Map<String, String> sourceToTarget;
-        public final TreeSet<String> outsidePaths;
+        public final PathSet outsidePaths;
         public final TreeSet<String> missedPaths;
         public final Map<String, Set<String>> pathSets;
 
+        /** the scan results of the resources loaded during a scan, released at the end of the scan */
+        protected final Map<String, ScanNode> scanNodes = new ConcurrentHashMap<>();
+
         private DashboardExtractSession(@NotNull final ResourceExtractConfig config,
                                         @NotNull final ResourceResolver resolver,
                                         final int levelMax) {
@@ -478,14 +735,16 @@ public class DashboardExtractService implements ResourceExtractService {
                     pathMappingRuleSet.add(new PathMappingRule(expression));
                 }
             }
+            pathRuleIndex = new PathRuleIndex(pathMappingRuleSet);
             ignoredChildren = patternList(config.ignoredChildren());
             ignoredProperties = patternList(config.ignoredProperties());
             this.resolver = resolver;
             this.levelMax = levelMax;
-            sourcePathSet = new TreeSet<>();
-            targetPathSet = new TreeSet<>();
+            scanThreads = config.scanThreads();
+            sourcePathSet = new PathSet();
+            targetPathSet = new PathSet();
             sourceToTarget = new HashMap<>();
-            outsidePaths = new TreeSet<>();
+            outsidePaths = new PathSet();
             missedPaths = new TreeSet<>();
             pathSets = new LinkedHashMap<>();
             pathSets.put("source", sourcePathSet);
@@ -510,15 +769,27 @@ public class DashboardExtractService implements ResourceExtractService {
             return pathSets;
         }
 
+        /**
+         * extracts the sources in the tree order of their target paths (of the source paths if the extractor
+         * isn't mapping to the targets): a parent is extracted before its children and all paths of a subtree are
+         * extracted consecutively (a streaming extractor like the JSON extractor can't reopen a subtree)
+         */
         public void extract(@NotNull final Extractor extractor)
                 throws Exception {
+            final List<String> sourcePaths = new ArrayList<>();
             for (final String sourcePath : getSourcePathSet()) {
+                final String targetPath = sourceToTarget.get(sourcePath);
+                if (StringUtils.isNotBlank(targetPath) && !targetPath.equals(sourcePath)) {
+                    sourcePaths.add(sourcePath);
+                }
+            }
+            if (extractor.isMappedToTarget()) {
+                sourcePaths.sort(Comparator.comparing(sourceToTarget::get, PathSet.TREE_ORDER));
+            }
+            for (final String sourcePath : sourcePaths) {
                 final Resource source = getResource(sourcePath);
                 if (source != null) {
-                    final String targetPath = sourceToTarget.get(sourcePath);
-                    if (StringUtils.isNotBlank(targetPath) && !targetPath.equals(sourcePath)) {
-                        extractor.extract(source, targetPath);
-                    }
+                    extractor.extract(source, sourceToTarget.get(sourcePath));
                 }
             }
         }
@@ -532,23 +803,52 @@ public class DashboardExtractService implements ResourceExtractService {
         protected @Nullable PathMappingRule getPathRule(@Nullable final String path,
                                                         @Nullable final Resource resource) {
             if (StringUtils.isNotBlank(path)) {
-                for (final PathMappingRule rule : pathMappingRuleSet) {
-                    if (rule.sourcePathPattern.matcher(path).matches()) {
-                        if (rule.sourceTypePattern == null || (resource != null && rule.sourceTypePattern.matcher(
-                                resource.getValueMap().get(JCR_PRIMARY_TYPE, "")).matches())) {
-                            return rule;
-                        }
+                for (final PathMappingRule rule : getPathRules(path)) {
+                    if (rule.sourceTypePattern == null || (resource != null && rule.sourceTypePattern.matcher(
+                            resource.getValueMap().get(JCR_PRIMARY_TYPE, "")).matches())) {
+                        return rule;
                     }
                 }
             }
             return null;
         }
 
+        /**
+         * @return the rules with a source path pattern matching the path in the order of the rule set
+         */
+        protected @NotNull List<PathMappingRule> getPathRules(@NotNull final String path) {
+            return pathRuleIndex.getRules(path);
+        }
+
         public void scanExtractPaths(@NotNull final String... paths) {
+            try {
+                scanPaths(paths);
+            } finally {
+                scanNodes.clear(); // the scan results are needed during the registration only
+            }
+        }
+
+        public void scanExtractPaths(@NotNull final Resource... target) {
+            try {
+                if (scanThreads > 1) {
+                    new ParallelScan().scan(Arrays.stream(target).map(Resource::getPath).collect(Collectors.toList()));
+                }
+                for (final Resource resource : target) {
+                    registerReferenceCandidate(resource.getPath(), 0);
+                }
+            } finally {
+                scanNodes.clear();
+            }
+        }
+
+        protected void scanPaths(@NotNull final String... paths) {
+            if (scanThreads > 1) {
+                new ParallelScan().scan(Arrays.asList(paths));
+            }
             for (final String path : paths) {
                 if ("pre".equals(path) || "predefined".equals(path)) {
                     if (predefinedPaths != null) {
-                        scanExtractPaths(predefinedPaths);
+                        scanPaths(predefinedPaths);
                     }
                 } else {
                     final Resource resource = resolver.getResource(path);
@@ -561,31 +861,50 @@ public class DashboardExtractService implements ResourceExtractService {
             }
         }
 
-        public void scanExtractPaths(@NotNull final Resource... target) {
-            for (final Resource resource : target) {
-                registerReferenceCandidate(resource.getPath(), 0);
+        /**
+         * @return the scan result of the resource of the given path, loaded by the sessions resolver if not
+         * already loaded during a parallel scan
+         */
+        protected @NotNull ScanNode getScanNode(@NotNull final String path) {
+            ScanNode node = scanNodes.get(path);
+            if (node == null) {
+                node = loadScanNode(resolver, path);
+                scanNodes.put(path, node);
+            }
+            return node;
+        }
+
+        protected @NotNull ScanNode loadScanNode(@NotNull final ResourceResolver resolver, @NotNull final String path) {
+            final Resource resource = resolver.getResource(path);
+            if (resource == null) {
+                return ScanNode.MISSING;
             }
+            final Resource parent = resource.getParent();
+            final PathMappingRule pathMappingRule = getPathRule(path, resource);
+            final List<String> references = new ArrayList<>();
+            if (pathMappingRule != null) {
+                collectNeededResources(references, resource, 0, pathMappingRule.maxDepth);
+            }
+            return new ScanNode(parent != null ? parent.getPath() : null, pathMappingRule, references);
         }
 
         /**
          * @return the first matching path mapping rule of an already registered parent upwards in the hierarchy
          */
-        protected @Nullable PathMappingRule getRegisteredParentRule(@NotNull final Resource source) {
-            final Resource sourceParent = source.getParent();
-            final String sourceParentPath;
-            if (sourceParent != null
-                    && sourcePathSet.contains(sourceParentPath = sourceParent.getPath())) {
-                final PathMappingRule parentMappingRule = getPathRule(sourceParentPath, sourceParent);
-                return parentMappingRule != null ? parentMappingRule : getRegisteredParentRule(sourceParent);
+        protected @Nullable PathMappingRule getRegisteredParentRule(@NotNull final ScanNode source) {
+            final String sourceParentPath = source.parentPath;
+            if (sourceParentPath != null && sourcePathSet.contains(sourceParentPath)) {
+                final ScanNode sourceParent = getScanNode(sourceParentPath);
+                return sourceParent.rule != null ? sourceParent.rule : getRegisteredParentRule(sourceParent);
             }
             return null;
         }
 
         protected void registerReferenceCandidate(@NotNull final String sourcePath, int level) {
             if (level < levelMax && !sourcePathSet.contains(sourcePath)) {
-                final Resource source = resolver.getResource(sourcePath);
-                if (source != null) {
-                    final PathMappingRule pathMappingRule = getPathRule(sourcePath, source);
+                final ScanNode source = getScanNode(sourcePath);
+                if (source.exists) {
+                    final PathMappingRule pathMappingRule = source.rule;
                     if (pathMappingRule != null) {
                         final PathMappingRule parentMappingRule = getRegisteredParentRule(source);
                         // if there is a parent mapping rule of a registered parent resource that's
@@ -608,7 +927,9 @@ public class DashboardExtractService implements ResourceExtractService {
                                 }
                             }
                         }
-                        collectNeededResources(level + 1, source, 0, pathMappingRule.maxDepth);
+                        for (final String reference : source.references) {
+                            registerReferenceCandidate(reference, level + 1);
+                        }
                     } else {
                         outsidePaths.add(sourcePath);
                     }
@@ -619,61 +940,177 @@ public class DashboardExtractService implements ResourceExtractService {
             }
         }
 
-        protected void registerParentReferences(@NotNull final Resource resource) {
-            final Resource parent = resource.getParent();
-            if (parent != null && !sourcePathSet.contains(parent.getPath())) {
-                final PathMappingRule parentRule = getPathRule(parent.getPath(), parent);
-                if (parentRule != null) {
-                    sourcePathSet.add(parent.getPath());
-                    collectNeededResources(0, parent, 0, parentRule.maxDepth);
+        protected void registerParentReferences(@NotNull final ScanNode resource) {
+            final String parentPath = resource.parentPath;
+            if (parentPath != null && !sourcePathSet.contains(parentPath)) {
+                final ScanNode parent = getScanNode(parentPath);
+                if (parent.rule != null) {
+                    sourcePathSet.add(parentPath);
+                    for (final String reference : parent.references) {
+                        registerReferenceCandidate(reference, 0);
+                    }
                     registerParentReferences(parent);
                 }
             }
         }
 
-        protected void collectNeededResources(int level, @NotNull final Resource target,
+        /**
+         * collects the path references of the target resource and its children (up to the max depth)
+         *
+         * @param references the list of the references found (in the order of the resource traversal)
+         */
+        protected void collectNeededResources(@NotNull final List<String> references, @NotNull final Resource target,
                                               int depth, @Nullable Integer maxDepth) {
             if (JCR_CONTENT.equals(target.getName())) {
                 maxDepth = null;
             }
             if (maxDepth == null || depth < maxDepth) {
-                findPathReferences(level, target.getValueMap());
+                findPathReferences(references, target.getValueMap());
                 for (final Resource child : target.getChildren()) {
-                    collectNeededResources(level, child, depth + 1, maxDepth);
+                    collectNeededResources(references, child, depth + 1, maxDepth);
                 }
             }
         }
 
-        protected void findPathReferences(int level, @NotNull final ValueMap values) {
+        protected void findPathReferences(@NotNull final List<String> references, @NotNull final ValueMap values) {
             for (final Map.Entry<String, Object> entry : values.entrySet()) {
                 final String key = entry.getKey();
                 if (isAllowedProperty(key)) {
                     final Object value = entry.getValue();
                     if (value instanceof String) {
-                        findPathReferences(level, (String) value);
+                        findPathReferences(references, (String) value);
                     } else if (value instanceof String[]) {
                         for (final String item : (String[]) value) {
-                            findPathReferences(level, item);
+                            findPathReferences(references, item);
                         }
                     }
                 }
             }
         }
 
-        protected void findPathReferences(int level, @Nullable final String value) {
-            if (StringUtils.isNotBlank(value)) {
-                if (PATH_PATTERN.matcher(value).matches()) {
-                    registerReferenceCandidate(value, level);
-                } else {
-                    final Matcher matcher = PATH_EMBEDDED.matcher(value);
-                    final int length = value.length();
-                    int pos = 0;
-                    while (pos < length && matcher.find(pos)) {
-                        registerReferenceCandidate(matcher.group("path"), level);
-                        pos = matcher.end() + 1;
+        protected void findPathReferences(@NotNull final List<String> references, @Nullable final String value) {
+            PATH_SCANNER.findPaths(value, references);
+        }
+
+        /**
+         * loads the scan results of the references of a set of paths in parallel into the scan node cache;
+         * the registration of the paths is done afterwards sequentially using the cached results, so the
+         * path sets are the same as the result of a sequential scan; each worker uses its own clone of the
+         * sessions resolver, the references are traversed with the levels of the first registration of a
+         * path but the (regardless of the level) traversed parents are expanding the traversal like the
+         * sequential scan does; a scan node missed here is loaded by the sequential registration
+         */
+        protected class ParallelScan {
+
+            protected final ForkJoinPool pool = new ForkJoinPool(scanThreads);
+            protected final Map<Thread, ResourceResolver> resolvers = new ConcurrentHashMap<>();
+            protected final Map<String, Integer> scanLevels = new ConcurrentHashMap<>();
+            protected final Set<String> scanParents = ConcurrentHashMap.newKeySet();
+            protected final AtomicInteger pending = new AtomicInteger();
+            protected final CountDownLatch done = new CountDownLatch(1);
+            protected final AtomicReference<Exception> failure = new AtomicReference<>();
+
+            protected class ScanTask extends RecursiveAction {
+
+                protected final String path;
+                protected final int level;
+
+                /**
+                 * @param level the level of the reference, '-1' if the path is a parent of a registered path
+                 */
+                protected ScanTask(@NotNull final String path, int level) {
+                    this.path = path;
+                    this.level = level;
+                    pending.incrementAndGet();
+                }
+
+                @Override
+                protected void compute() {
+                    try {
+                        if (level < 0 ? scanParents.add(path) : claim(path, level)) {
+                            ScanNode node = scanNodes.get(path);
+                            if (node == null) {
+                                final ScanNode loaded = loadScanNode(getResolver(), path);
+                                node = Optional.ofNullable(scanNodes.putIfAbsent(path, loaded)).orElse(loaded);
+                            }
+                            if (node.exists && (level >= 0 || node.rule != null)) {
+                                final int referenceLevel = level < 0 ? 0 : level + 1;
+                                if (node.rule != null && referenceLevel < levelMax) {
+                                    for (final String reference : node.references) {
+                                        new ScanTask(reference, referenceLevel).fork();
+                                    }
+                                }
+                                if (node.parentPath != null) {
+                                    new ScanTask(node.parentPath, -1).fork();
+                                }
+                            }
+                        }
+                    } catch (RuntimeException ex) {
+                        failure.compareAndSet(null, ex);
+                    } finally {
+                        release();
                     }
                 }
             }
+
+            public void scan(@NotNull final Collection<String> paths) {
+                if (levelMax > 0) {
+                    pending.incrementAndGet(); // no completion during the submission of the root tasks
+                    for (final String path : paths) {
+                        if (!"pre".equals(path) && !"predefined".equals(path)) {
+                            pool.execute(new ScanTask(path, 0));
+                        }
+                    }
+                    release();
+                    try {
+                        done.await();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        pool.shutdownNow();
+                        for (final ResourceResolver workerResolver : resolvers.values()) {
+                            workerResolver.close();
+                        }
+                    }
+                    if (failure.get() != null) {
+                        LOG.warn("parallel scan failed, scan continued sequential: {}", failure.get().toString());
+                    }
+                }
+            }
+
+            protected void release() {
+                if (pending.decrementAndGet() == 0) {
+                    done.countDown();
+                }
+            }
+
+            /**
+             * @return 'true' if the path is not already scanned on the same or a lower level
+             */
+            protected boolean claim(@NotNull final String path, int level) {
+                Integer known;
+                while ((known = scanLevels.putIfAbsent(path, level)) != null) {
+                    if (known <= level) {
+                        return false;
+                    }
+                    if (scanLevels.replace(path, known, level)) {
+                        return true;
+                    }
+                }
+                return true;
+            }
+
+            protected @NotNull ResourceResolver getResolver() {
+                return resolvers.computeIfAbsent(Thread.currentThread(), thread -> {
+                    synchronized (resolver) {
+                        try {
+                            return resolver.clone(null);
+                        } catch (LoginException ex) {
+                            throw new IllegalStateException(ex);
+                        }
+                    }
+                });
+            }
         }
 
         /**
@@ -709,32 +1146,9 @@ public class DashboardExtractService implements ResourceExtractService {
 
         protected @Nullable String adjustPathString(@NotNull final String value) {
             if (StringUtils.isNotBlank(value)) {
-                if (value.startsWith("/")) {
-                    return getTargetPath(value);
-                } else {
-                    boolean modified = false;
-                    final StringBuilder buffer = new StringBuilder();
-                    final Matcher matcher = Pattern.compile("\"(?<path>/[^\"]+)\"").matcher(value);
-                    final int length = value.length();
-                    int pos = 0;
-                    while (pos < length && matcher.find(pos)) {
-                        buffer.append(value, pos, matcher.start());
-                        final String targetPath = getTargetPath(matcher.group("path"));
-                        if (targetPath != null) {
-                            buffer.append('"').append(targetPath).append('"');
-                            modified = true;
-                        } else {
-                            buffer.append(value, matcher.start(), matcher.end());
-                        }
-                        pos = matcher.end() + 1;
-                    }
-                    if (modified) {
-                        if (pos < length) {
-                            buffer.append(value.substring(pos));
-                        }
-                        return buffer.toString();
-                    }
-                }
+                return value.startsWith("/")
+                        ? getTargetPath(value)
+                        : PATH_SCANNER.replaceQuotedPaths(value, this::getTargetPath);
             }
             return null;
         }
@@ -812,7 +1226,7 @@ public class DashboardExtractService implements ResourceExtractService {
     public @NotNull Extractor createCopyExtractor(@Nullable final ResourceExtractConfig config,
                                                   @Nullable final Mode mode, boolean dryRun,
                                                   @NotNull final ExtractSession session) {
-        return new CopyToTargetExtractor(mode, dryRun, session);
+        return new CopyToTargetExtractor(config != null ? config : defaultConfig, mode, dryRun, session);
     }
 
     public @NotNull Extractor createZipExtractor(@Nullable final ResourceExtractConfig config,
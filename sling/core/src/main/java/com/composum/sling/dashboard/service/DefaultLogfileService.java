@@ -0,0 +1,1043 @@
+package com.composum.sling.dashboard.service;
+
+import com.composum.sling.dashboard.util.LogfileReader;
+import com.composum.sling.dashboard.util.LogfileReader.LineHandler;
+import com.composum.sling.dashboard.util.LogfileTimestamp;
+import org.apache.commons.io.IOUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+@Component(
+        service = {LogfileService.class}
+)
+@Designate(ocd = DefaultLogfileService.Config.class)
+public class DefaultLogfileService implements LogfileService {
+
+    @ObjectClassDefinition(name = "Composum Dashboard Logfile Service")
+    @interface Config {
+
+        @AttributeDefinition(name = "Poll Interval",
+                description = "the interval (milliseconds) to check the watched logfiles for changes")
+        long pollInterval() default 1000L;
+
+        @AttributeDefinition(name = "Follow Rotation",
+                description = "if 'true' the rest of a rotated (or copied and truncated) logfile is read from the "
+                        + "rolled sibling ('error.log.N' or 'error.log.N.gz') to keep the counters and views complete")
+        boolean followRotation() default true;
+
+        @AttributeDefinition(name = "Search Parallelism",
+                description = "the max number of threads used to scan the chunks of a logfile in parallel by a search")
+        int searchParallelism() default 4;
+
+        @AttributeDefinition(name = "Idle Timeout",
+                description = "the time (seconds) the index of a logfile is kept after its last use; the index of "
+                        + "a removed file is dropped with the next poll")
+        long idleTimeout() default 600L;
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(DefaultLogfileService.class);
+
+    /** the max number of idle readers kept for reuse */
+    public static final int READER_POOL_SIZE = 8;
+
+    /** the size of the input buffer used to inflate compressed files */
+    public static final int INFLATE_BUFFER_SIZE = 64 * 1024;
+
+    /** the time period of one histogram bucket (one minute) */
+    public static final long HISTOGRAM_BUCKET_SIZE = 60 * 1000L;
+
+    /** the number of histogram buckets (one day) */
+    public static final int HISTOGRAM_BUCKETS = 24 * 60;
+
+    /** the min distance of the entries of the sparse time index (bytes) */
+    public static final long TIME_INDEX_INTERVAL = 256 * 1024L;
+
+    /** the size of the line aligned chunks scanned in parallel by a search */
+    public static final long SEARCH_CHUNK_SIZE = 8 * 1024 * 1024L;
+
+    /**
+     * a line found by a search and the position of the following line
+     */
+    protected static class SearchHit {
+
+        protected final String line;
+        protected final long position;
+        protected final long time;
+        protected long next;
+
+        protected SearchHit(@NotNull final String line, long position, long time) {
+            this.line = line;
+            this.position = position;
+            this.time = time;
+        }
+    }
+
+    /**
+     * thrown by a line handler to stop the reading, e.g. if the end of a search chunk is reached
+     */
+    protected static class SearchStop extends IOException {
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    /**
+     * the scan of one line aligned chunk of a logfile, collects the hits up to the given limit
+     */
+    protected static class SearchChunk implements LineHandler {
+
+        protected final long start;
+        protected final long end;
+        protected final Pattern pattern;
+        protected final Long from;
+        protected final Long to;
+        protected final int limit;
+        protected final AtomicBoolean stop;
+
+        protected final List<SearchHit> hits = new ArrayList<>();
+        protected int counted = 0;
+        protected SearchHit pending;
+        protected long time = -1L;
+        protected boolean passed = false;
+
+        protected SearchChunk(long start, long end, @NotNull final Pattern pattern,
+                              @Nullable final Long from, @Nullable final Long to, int limit) {
+            this(start, end, pattern, from, to, limit, new AtomicBoolean());
+        }
+
+        /**
+         * @param stop the flag shared by the chunks of one wave, set if the results of the wave are complete
+         */
+        protected SearchChunk(long start, long end, @NotNull final Pattern pattern,
+                              @Nullable final Long from, @Nullable final Long to, int limit,
+                              @NotNull final AtomicBoolean stop) {
+            this.start = start;
+            this.end = end;
+            this.pattern = pattern;
+            this.from = from;
+            this.to = to;
+            this.limit = limit;
+            this.stop = stop;
+        }
+
+        @Override
+        public void handleLine(@NotNull final String line, long position) throws IOException {
+            if (pending != null) {
+                pending.next = position;
+                pending = null;
+            }
+            if (position >= end || counted >= limit || stop.get()) {
+                throw new SearchStop();
+            }
+            if (isTimeFiltered()) {
+                final long lineTime = LogfileTimestamp.parseLine(line);
+                if (lineTime >= 0) {
+                    time = lineTime;
+                    if (to != null && time >= to) {
+                        passed = true; // the lines are logged in the order of their time
+                        throw new SearchStop();
+                    }
+                }
+                if (time >= 0 && !isInTimeRange(time)) {
+                    return;
+                }
+            }
+            if (pattern.matcher(line).find()) {
+                hits.add(pending = new SearchHit(line, position, time));
+                if (time >= 0 || !isTimeFiltered()) {
+                    // the hits without time (at the chunk start) are resolved by the merge of the chunks
+                    counted++;
+                }
+            }
+        }
+
+        protected boolean isTimeFiltered() {
+            return from != null || to != null;
+        }
+
+        protected boolean isInTimeRange(long time) {
+            return (from == null || time >= from) && (to == null || time < to);
+        }
+
+        protected void finish(long position) {
+            if (pending != null) {
+                pending.next = Math.min(position, end);
+                pending = null;
+            }
+        }
+    }
+
+    protected class DefaultLogfile implements Logfile {
+
+        protected final File file;
+        protected final Pattern errorPattern;
+        protected final Pattern warningPattern;
+        protected final long sizeLimit;
+        protected final boolean compressed;
+
+        protected Object identity;
+        protected long lastModified;
+        protected volatile int generation = 0;
+        protected File rotatedFile;
+
+        protected long startPosition = -1;
+        protected volatile long position = 0;
+
+        protected volatile int lines = 0;
+        protected volatile int errors = 0;
+        protected volatile int warnings = 0;
+
+        protected final AtomicInteger watchers = new AtomicInteger();
+        protected volatile long lastAccess = System.currentTimeMillis();
+        protected final AtomicBoolean indexing = new AtomicBoolean();
+
+        /** the histogram ring buffer, each slot is used for the minute stored in the 'bucketMinutes' */
+        protected final int[] errorBuckets = new int[HISTOGRAM_BUCKETS];
+        protected final int[] warningBuckets = new int[HISTOGRAM_BUCKETS];
+        protected final long[] bucketMinutes = new long[HISTOGRAM_BUCKETS];
+        protected long lastTime = -1L;
+
+        /** the sparse time index - the positions of timestamped lines in a distance of the index interval */
+        protected long[] timeIndexTimes = new long[64];
+        protected long[] timeIndexPositions = new long[64];
+        protected int timeIndexCount = 0;
+
+        protected DefaultLogfile(@NotNull final File file,
+                                 @NotNull final Pattern errorPattern, @NotNull final Pattern warningPattern,
+                                 long sizeLimit) {
+            this.file = file;
+            this.errorPattern = errorPattern;
+            this.warningPattern = warningPattern;
+            this.sizeLimit = sizeLimit;
+            this.compressed = isCompressed(file);
+        }
+
+        @Override
+        public @NotNull File getFile() {
+            return file;
+        }
+
+        @Override
+        public int getGeneration() {
+            return generation;
+        }
+
+        @Override
+        public synchronized long getStartPosition() {
+            return Math.max(startPosition, 0);
+        }
+
+        @Override
+        public long getPosition() {
+            return position;
+        }
+
+        @Override
+        public int getLines() {
+            return lines;
+        }
+
+        @Override
+        public int getErrors() {
+            return errors;
+        }
+
+        @Override
+        public int getWarnings() {
+            return warnings;
+        }
+
+        @Override
+        public synchronized @NotNull Histogram getHistogram() {
+            final long end = compressed && lastTime >= 0 ? lastTime : System.currentTimeMillis();
+            final long startMinute = end / HISTOGRAM_BUCKET_SIZE - HISTOGRAM_BUCKETS + 1;
+            final int[] errors = new int[HISTOGRAM_BUCKETS];
+            final int[] warnings = new int[HISTOGRAM_BUCKETS];
+            for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+                final long minute = startMinute + i;
+                final int slot = (int) (minute % HISTOGRAM_BUCKETS);
+                if (bucketMinutes[slot] == minute) {
+                    errors[i] = errorBuckets[slot];
+                    warnings[i] = warningBuckets[slot];
+                }
+            }
+            return new Histogram(startMinute * HISTOGRAM_BUCKET_SIZE, HISTOGRAM_BUCKET_SIZE, errors, warnings);
+        }
+
+        @Override
+        public synchronized void update() {
+            try {
+                final BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+                final Object identity = getIdentity(attributes);
+                if (compressed) {
+                    updateCompressed(attributes, identity);
+                    return;
+                }
+                if (startPosition >= 0) {
+                    if (!identity.equals(this.identity)) {
+                        rotated(true);
+                    } else if (attributes.size() < position) {
+                        rotated(false);
+                    }
+                }
+                this.identity = identity;
+                if (startPosition < 0 || position < attributes.size()) {
+                    try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                        if (startPosition >= 0 && !isLineStart(channel, position)) {
+                            // a new file which has reused the inode of the rotated file
+                            rotated(false);
+                        }
+                        lastModified = attributes.lastModifiedTime().toMillis();
+                        if (startPosition < 0) {
+                            startPosition = LogfileReader.findLineStart(channel,
+                                    Math.max(channel.size() - sizeLimit, 0));
+                            position = startPosition;
+                        }
+                        final long lastPosition = position;
+                        final LogfileReader reader = acquireReader();
+                        try {
+                            position = reader.read(channel, position, this::indexLine);
+                        } finally {
+                            releaseReader(reader);
+                        }
+                        if (position != lastPosition) {
+                            notifyAll();
+                        }
+                    }
+                }
+            } catch (IOException ex) {
+                LOG.error("update({}): {}", file, ex.toString());
+            }
+        }
+
+        @Override
+        public void requestUpdate() {
+            if (!compressed) {
+                update();
+            } else if (indexing.compareAndSet(false, true)) {
+                try {
+                    getIndexer().execute(() -> {
+                        try {
+                            update();
+                        } finally {
+                            indexing.set(false);
+                        }
+                    });
+                } catch (RejectedExecutionException ex) {
+                    indexing.set(false);
+                    LOG.warn("requestUpdate({}): {}", file, ex.toString());
+                }
+            }
+        }
+
+        /**
+         * a compressed archive is indexed completely by one streaming pass,
+         * the index is rebuilt only if the archive has been replaced
+         */
+        protected void updateCompressed(@NotNull final BasicFileAttributes attributes, @NotNull final Object identity)
+                throws IOException {
+            final long modified = attributes.lastModifiedTime().toMillis();
+            if (startPosition < 0 || !identity.equals(this.identity) || modified != lastModified) {
+                if (startPosition >= 0) {
+                    generation++;
+                }
+                lines = errors = warnings = 0;
+                Arrays.fill(bucketMinutes, 0L);
+                lastTime = -1L;
+                timeIndexCount = 0;
+                startPosition = position = 0;
+                final LogfileReader reader = acquireReader();
+                try (final InputStream input = openCompressed(file)) {
+                    position = reader.read(Channels.newChannel(input), 0, Long.MAX_VALUE, this::indexLine);
+                } finally {
+                    releaseReader(reader);
+                }
+                this.identity = identity;
+                lastModified = modified;
+                notifyAll();
+            }
+        }
+
+        /**
+         * @return the file key (inode) if available, the creation time otherwise (the creation time is not
+         * used on systems with file keys because it's emulated by the modification time on some file systems)
+         */
+        protected @NotNull Object getIdentity(@NotNull final BasicFileAttributes attributes) {
+            final Object fileKey = attributes.fileKey();
+            return fileKey != null ? fileKey : attributes.creationTime();
+        }
+
+        /**
+         * @return 'true' if the byte before the position is a line feed (the indexed lines end there)
+         */
+        protected boolean isLineStart(@NotNull final FileChannel channel, long position) throws IOException {
+            if (position > 0) {
+                final ByteBuffer lastByte = ByteBuffer.allocate(1);
+                return channel.read(lastByte, position - 1) == 1 && lastByte.get(0) == '\n';
+            }
+            return true;
+        }
+
+        /**
+         * starts a new generation after a rotation or truncation of the file; the rest of the previous
+         * generation is indexed from the rotated file if this file can be found
+         *
+         * @param renamed 'true' if the file identity has been changed (the rotated file has the old identity)
+         */
+        protected void rotated(boolean renamed) {
+            LOG.info("logfile {} {} at position {}", file, renamed ? "rotated" : "truncated", position);
+            rotatedFile = followRotation ? findRotatedFile(renamed) : null;
+            if (rotatedFile != null) {
+                final LogfileReader reader = acquireReader();
+                try {
+                    readRotatedFile(reader, rotatedFile, position, this::indexLine);
+                } catch (IOException ex) {
+                    LOG.error("rotated({}): {}", rotatedFile, ex.toString());
+                } finally {
+                    releaseReader(reader);
+                }
+            }
+            generation++;
+            startPosition = 0;
+            position = 0;
+            timeIndexCount = 0;
+            notifyAll();
+        }
+
+        /**
+         * @return the rolled sibling of the file which contains the previous generation; a renamed file is
+         * identified by its file key, a copied (truncated) or compressed file by its modification time
+         */
+        protected @Nullable File findRotatedFile(boolean renamed) {
+            final File[] siblings = file.getAbsoluteFile().getParentFile().listFiles(sibling ->
+                    sibling.isFile() && sibling.getName().startsWith(file.getName() + "."));
+            File rotated = null;
+            if (siblings != null) {
+                for (final File sibling : siblings) {
+                    try {
+                        final BasicFileAttributes attributes =
+                                Files.readAttributes(sibling.toPath(), BasicFileAttributes.class);
+                        if (renamed && identity.equals(getIdentity(attributes))) {
+                            return sibling;
+                        }
+                        final long modified = attributes.lastModifiedTime().toMillis();
+                        if (modified >= lastModified - 1000L
+                                && (isCompressed(sibling) || attributes.size() >= position)
+                                && (rotated == null || modified > rotated.lastModified())) {
+                            rotated = sibling;
+                        }
+                    } catch (IOException ex) {
+                        LOG.error("findRotatedFile({}): {}", sibling, ex.toString());
+                    }
+                }
+            }
+            return rotated;
+        }
+
+        protected void indexLine(@NotNull final String line, long linePosition) {
+            lines++;
+            if (timeIndexCount == 0
+                    || linePosition - timeIndexPositions[timeIndexCount - 1] >= TIME_INDEX_INTERVAL) {
+                final long time = LogfileTimestamp.parseLine(line);
+                if (time >= 0) {
+                    if (timeIndexCount == timeIndexTimes.length) {
+                        timeIndexTimes = Arrays.copyOf(timeIndexTimes, timeIndexCount * 2);
+                        timeIndexPositions = Arrays.copyOf(timeIndexPositions, timeIndexCount * 2);
+                    }
+                    timeIndexTimes[timeIndexCount] = time;
+                    timeIndexPositions[timeIndexCount++] = linePosition;
+                }
+            }
+            final boolean error = errorPattern.matcher(line).find();
+            final boolean warning = warningPattern.matcher(line).find();
+            if (error) {
+                errors++;
+            }
+            if (warning) {
+                warnings++;
+            }
+            if (error || warning) {
+                countBucket(line, error, warning);
+            }
+        }
+
+        /**
+         * counts an error or warning line in the bucket of its minute; a line without timestamp
+         * is counted in the minute of the last error or warning
+         */
+        protected void countBucket(@NotNull final String line, boolean error, boolean warning) {
+            final long time = LogfileTimestamp.parseLine(line);
+            if (time >= 0) {
+                lastTime = time;
+            }
+            if (lastTime >= 0) {
+                final long minute = lastTime / HISTOGRAM_BUCKET_SIZE;
+                final int slot = (int) (minute % HISTOGRAM_BUCKETS);
+                if (bucketMinutes[slot] != minute) {
+                    if (bucketMinutes[slot] > minute) {
+                        return; // older than the period of the ring buffer
+                    }
+                    bucketMinutes[slot] = minute;
+                    errorBuckets[slot] = 0;
+                    warningBuckets[slot] = 0;
+                }
+                if (error) {
+                    errorBuckets[slot]++;
+                }
+                if (warning) {
+                    warningBuckets[slot]++;
+                }
+            }
+        }
+
+        @Override
+        public long getSize() {
+            if (compressed) {
+                synchronized (this) {
+                    if (startPosition < 0) {
+                        update();
+                    }
+                    return position;
+                }
+            }
+            return file.length();
+        }
+
+        @Override
+        public long read(long position, @NotNull final LineHandler handler) throws IOException {
+            return read(position, Long.MAX_VALUE, handler);
+        }
+
+        @Override
+        public long read(long position, long maxBytes, @NotNull final LineHandler handler) throws IOException {
+            if (compressed) {
+                return readCompressed(position, maxBytes, handler);
+            }
+            final LogfileReader reader = acquireReader();
+            try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                if (position < 0) {
+                    position = LogfileReader.findLineStart(channel, Math.max(channel.size() - sizeLimit, 0));
+                }
+                return reader.read(channel, position, maxBytes, handler);
+            } finally {
+                releaseReader(reader);
+            }
+        }
+
+        /**
+         * reads a compressed archive by inflating the content up to the requested position;
+         * the size limit start is determined by the size of the indexed (uncompressed) content
+         */
+        protected long readCompressed(long position, long maxBytes, @NotNull final LineHandler handler)
+                throws IOException {
+            if (startPosition < 0) {
+                update();
+            }
+            return position < 0
+                    ? inflate(Math.max(this.position - sizeLimit, 0), true, maxBytes, handler)
+                    : inflate(position, false, maxBytes, handler);
+        }
+
+        /**
+         * @param position the reading start position in the uncompressed content
+         * @param align    if 'true' the reading starts at the next line start if the position is inside of a line
+         */
+        protected long inflate(long position, boolean align, long maxBytes, @NotNull final LineHandler handler)
+                throws IOException {
+            final LogfileReader reader = acquireReader();
+            try (final InputStream input = openCompressed(file)) {
+                if (align && position > 0) {
+                    // skip to the start of the next line
+                    IOUtils.skipFully(input, position - 1);
+                    int next = input.read();
+                    while (next >= 0 && next != '\n') {
+                        next = input.read();
+                        position++;
+                    }
+                } else {
+                    IOUtils.skipFully(input, position);
+                }
+                return reader.read(Channels.newChannel(input), position, maxBytes, handler);
+            } catch (EOFException ignore) {
+                return position;
+            } finally {
+                releaseReader(reader);
+            }
+        }
+
+        @Override
+        public long seek(long time) throws IOException {
+            long from;
+            long to;
+            synchronized (this) {
+                if (startPosition < 0) {
+                    update();
+                }
+                if (timeIndexCount > 0 && (time >= timeIndexTimes[0] || compressed)) {
+                    // the index of the last entry before the time or '-1'
+                    int low = 0;
+                    int high = timeIndexCount - 1;
+                    while (low <= high) {
+                        final int middle = (low + high) >>> 1;
+                        if (timeIndexTimes[middle] < time) {
+                            low = middle + 1;
+                        } else {
+                            high = middle - 1;
+                        }
+                    }
+                    from = high >= 0 ? timeIndexPositions[high] : compressed ? 0 : timeIndexPositions[0];
+                    to = high + 1 < timeIndexCount ? timeIndexPositions[high + 1] : position;
+                } else {
+                    from = 0;
+                    to = timeIndexCount > 0 ? timeIndexPositions[0] : position;
+                }
+            }
+            if (!compressed && to - from > TIME_INDEX_INTERVAL) {
+                from = probe(time, from, to);
+            }
+            final long[] found = new long[]{-1L};
+            final LineHandler scan = (line, linePosition) -> {
+                final long lineTime = LogfileTimestamp.parseLine(line);
+                if (lineTime >= time) {
+                    found[0] = linePosition;
+                    throw new SearchStop();
+                }
+            };
+            long end;
+            try {
+                if (compressed) {
+                    end = inflate(from, false, Long.MAX_VALUE, scan);
+                } else {
+                    final LogfileReader reader = acquireReader();
+                    try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                        end = reader.read(channel, from, scan);
+                    } finally {
+                        releaseReader(reader);
+                    }
+                }
+            } catch (SearchStop stop) {
+                end = found[0];
+            }
+            return end;
+        }
+
+        /**
+         * a binary search by probes of the file content (the first timestamp after the middle of the range)
+         *
+         * @return the start of a line before the searched time in a distance of max. one index interval
+         */
+        protected long probe(long time, long low, long high) throws IOException {
+            final LogfileReader reader = acquireReader();
+            try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                final long[] found = new long[2];
+                while (high - low > TIME_INDEX_INTERVAL) {
+                    final long middle = LogfileReader.findLineStart(channel, low + (high - low) / 2);
+                    final long limit = high;
+                    found[0] = found[1] = -1L;
+                    try {
+                        reader.read(channel, middle, limit - middle, (line, linePosition) -> {
+                            final long lineTime;
+                            if (linePosition >= limit) {
+                                throw new SearchStop();
+                            } else if ((lineTime = LogfileTimestamp.parseLine(line)) >= 0) {
+                                found[0] = lineTime;
+                                found[1] = linePosition;
+                                throw new SearchStop();
+                            }
+                        });
+                    } catch (SearchStop ignore) {
+                    }
+                    if (found[1] < 0) {
+                        high = middle;
+                    } else if (found[0] >= time) {
+                        high = found[1];
+                    } else if (found[1] > low) {
+                        low = found[1];
+                    } else {
+                        break; // a line longer than the half of the range
+                    }
+                }
+            } finally {
+                releaseReader(reader);
+            }
+            return low;
+        }
+
+        @Override
+        public long search(long position, @NotNull final Pattern pattern, @Nullable final Long from,
+                           @Nullable final Long to, int limit, @NotNull final LineHandler handler)
+                throws IOException {
+            if (compressed) {
+                // a compressed file can only be scanned sequentially
+                if (startPosition < 0) {
+                    update();
+                }
+                final SearchChunk chunk = new SearchChunk(position, Long.MAX_VALUE, pattern, from, to, limit);
+                long next;
+                try {
+                    chunk.finish(next = inflate(Math.max(position, 0), false, Long.MAX_VALUE, chunk));
+                } catch (SearchStop stop) {
+                    next = this.position;
+                }
+                int remaining = limit;
+                for (final SearchHit hit : chunk.hits) {
+                    if (remaining > 0) {
+                        handler.handleLine(hit.line, hit.position);
+                        next = hit.next;
+                        remaining--;
+                    }
+                }
+                return remaining > 0 ? this.position : next;
+            }
+            return searchFile(Math.max(position, 0), pattern, from, to, limit, handler);
+        }
+
+        /**
+         * scans the file in waves of parallel chunk scans, the chunks of a wave are merged in their order
+         * until the limit of hits is reached; a time range search starts at the position of the 'from' time
+         * and ends with the first chunk which has reached the 'to' time
+         */
+        protected long searchFile(long position, @NotNull final Pattern pattern, @Nullable final Long from,
+                                  @Nullable final Long to, int limit, @NotNull final LineHandler handler)
+                throws IOException {
+            final ForkJoinPool pool = getSearchPool();
+            int remaining = limit;
+            long next = position;
+            long time = -1L; // the time of the last line of the merged chunks
+            if (from != null) {
+                position = Math.max(position, seek(from));
+                next = position;
+            }
+            try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                final long end = channel.size();
+                long chunkStart = position;
+                boolean passed = false;
+                while (chunkStart < end && remaining > 0 && !passed) {
+                    final List<Future<SearchChunk>> wave = new ArrayList<>();
+                    final AtomicBoolean stop = new AtomicBoolean();
+                    try {
+                        for (int i = 0; i < pool.getParallelism() && chunkStart < end; i++) {
+                            final SearchChunk chunk = new SearchChunk(chunkStart, nextChunkEnd(channel, chunkStart, end),
+                                    pattern, from, to, remaining, stop);
+                            wave.add(pool.submit(() -> scanChunk(chunk)));
+                            chunkStart = chunk.end;
+                        }
+                        for (final Future<SearchChunk> future : wave) {
+                            final SearchChunk chunk = awaitChunk(future);
+                            for (final SearchHit hit : chunk.hits) {
+                                if (remaining > 0 && (hit.time >= 0 || time < 0 || chunk.isInTimeRange(time))) {
+                                    handler.handleLine(hit.line, hit.position);
+                                    next = hit.next;
+                                    remaining--;
+                                }
+                            }
+                            if (remaining <= 0) {
+                                break;
+                            }
+                            if (chunk.passed) {
+                                passed = true;
+                                next = end; // nothing to find after the time range
+                                break;
+                            }
+                            if (chunk.time >= 0) {
+                                time = chunk.time;
+                            }
+                            next = chunk.end;
+                        }
+                    } finally {
+                        // the running scans of the wave are stopped by the flag, the waiting ones are cancelled
+                        stop.set(true);
+                        for (final Future<SearchChunk> future : wave) {
+                            future.cancel(false);
+                        }
+                    }
+                }
+            }
+            return next;
+        }
+
+        protected @NotNull SearchChunk scanChunk(@NotNull final SearchChunk chunk) throws IOException {
+            final LogfileReader reader = acquireReader();
+            try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                chunk.finish(reader.read(channel, chunk.start, chunk.end - chunk.start, chunk));
+            } catch (SearchStop ignore) {
+            } finally {
+                releaseReader(reader);
+            }
+            return chunk;
+        }
+
+        @Override
+        public void readRotated(long position, @NotNull final LineHandler handler) throws IOException {
+            File rotated;
+            synchronized (this) {
+                rotated = rotatedFile;
+            }
+            if (rotated != null) {
+                if (!rotated.isFile()) {
+                    // the rotated file has been compressed meanwhile
+                    rotated = new File(rotated.getPath() + ".gz");
+                }
+                if (rotated.isFile()) {
+                    final LogfileReader reader = acquireReader();
+                    try {
+                        readRotatedFile(reader, rotated, position, handler);
+                    } finally {
+                        releaseReader(reader);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public boolean awaitChange(int generation, long position, long timeout) throws InterruptedException {
+            watchers.incrementAndGet();
+            try {
+                synchronized (this) {
+                    final long until = System.currentTimeMillis() + timeout;
+                    long wait;
+                    while (this.generation == generation && this.position <= position
+                            && (wait = until - System.currentTimeMillis()) > 0) {
+                        wait(wait);
+                    }
+                    return this.generation != generation || this.position > position;
+                }
+            } finally {
+                lastAccess = System.currentTimeMillis();
+                watchers.decrementAndGet();
+            }
+        }
+    }
+
+    protected final Map<String, DefaultLogfile> logfiles = new ConcurrentHashMap<>();
+
+    protected final Queue<LogfileReader> readerPool = new ConcurrentLinkedQueue<>();
+
+    protected boolean followRotation;
+    protected long idleTimeout = 600000L;
+    protected int searchParallelism = 4;
+    protected long searchChunkSize = SEARCH_CHUNK_SIZE;
+
+    protected ForkJoinPool searchPool;
+
+    protected ExecutorService indexer;
+
+    protected ScheduledExecutorService poller;
+
+    @Activate
+    @Modified
+    protected void activate(final Config config) {
+        deactivate();
+        final long pollInterval = Math.max(100L, config.pollInterval());
+        followRotation = config.followRotation();
+        searchParallelism = Math.max(1, config.searchParallelism());
+        idleTimeout = Math.max(0L, config.idleTimeout()) * 1000L;
+        poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "composum-dashboard-logfile-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller.scheduleWithFixedDelay(this::pollWatchedLogfiles, pollInterval, pollInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        if (poller != null) {
+            poller.shutdownNow();
+            poller = null;
+        }
+        synchronized (this) {
+            if (searchPool != null) {
+                searchPool.shutdownNow();
+                searchPool = null;
+            }
+            if (indexer != null) {
+                indexer.shutdownNow();
+                indexer = null;
+            }
+        }
+    }
+
+    /**
+     * @return the bounded pool of the search threads, created on demand
+     */
+    protected synchronized @NotNull ForkJoinPool getSearchPool() {
+        if (searchPool == null) {
+            searchPool = new ForkJoinPool(searchParallelism);
+        }
+        return searchPool;
+    }
+
+    /**
+     * @return the single thread which is indexing the compressed archives in the background, created on demand
+     */
+    protected synchronized @NotNull ExecutorService getIndexer() {
+        if (indexer == null) {
+            indexer = Executors.newSingleThreadExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "composum-dashboard-logfile-indexer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return indexer;
+    }
+
+    /**
+     * @return the end of a chunk starting at the given position, aligned to the start of a line
+     */
+    protected long nextChunkEnd(@NotNull final FileChannel channel, long chunkStart, long end) throws IOException {
+        long size = searchChunkSize;
+        while (chunkStart + size < end) {
+            final long chunkEnd = LogfileReader.findLineStart(channel, chunkStart + size);
+            if (chunkEnd > chunkStart) {
+                return chunkEnd;
+            }
+            size *= 2; // a line longer than the chunk size
+        }
+        return end;
+    }
+
+    protected @NotNull SearchChunk awaitChunk(@NotNull final Future<SearchChunk> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(ex.toString());
+        } catch (ExecutionException ex) {
+            throw ex.getCause() instanceof IOException ? (IOException) ex.getCause() : new IOException(ex.getCause());
+        }
+    }
+
+    /**
+     * the shared poller job - updates all logfiles which are watched currently by one or more waiting readers
+     * and drops the index of the unwatched logfiles which are removed or not used anymore
+     */
+    protected void pollWatchedLogfiles() {
+        final long now = System.currentTimeMillis();
+        for (final Iterator<DefaultLogfile> iterator = logfiles.values().iterator(); iterator.hasNext(); ) {
+            final DefaultLogfile logfile = iterator.next();
+            if (logfile.watchers.get() <= 0) {
+                if (now - logfile.lastAccess > idleTimeout || !logfile.getFile().isFile()) {
+                    LOG.debug("pollWatchedLogfiles({}): index dropped", logfile.getFile());
+                    iterator.remove();
+                }
+            } else {
+                try {
+                    logfile.update();
+                } catch (RuntimeException ex) {
+                    LOG.error("pollWatchedLogfiles({}): {}", logfile.getFile(), ex.toString());
+                }
+            }
+        }
+    }
+
+    @Override
+    public @Nullable Logfile getLogfile(@NotNull final File file,
+                                        @NotNull final Pattern errorPattern, @NotNull final Pattern warningPattern,
+                                        long sizeLimit) {
+        if (file.isFile() && file.canRead()) {
+            try {
+                final String key = file.getCanonicalPath() + "\n" + sizeLimit
+                        + "\n" + errorPattern.pattern() + "\n" + warningPattern.pattern();
+                final DefaultLogfile logfile = logfiles.computeIfAbsent(key, k ->
+                        new DefaultLogfile(file, errorPattern, warningPattern, sizeLimit));
+                logfile.lastAccess = System.currentTimeMillis();
+                return logfile;
+            } catch (IOException ex) {
+                LOG.error("getLogfile({}): {}", file, ex.toString());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * reads the lines of a rotated file starting at the given position, a compressed file is decompressed
+     * on the fly
+     */
+    protected long readRotatedFile(@NotNull final LogfileReader reader, @NotNull final File rotated,
+                                   long position, @NotNull final LineHandler handler)
+            throws IOException {
+        if (isCompressed(rotated)) {
+            try (final InputStream input = openCompressed(rotated)) {
+                IOUtils.skipFully(input, position);
+                return reader.read(Channels.newChannel(input), position, Long.MAX_VALUE, handler);
+            }
+        } else {
+            try (final FileChannel channel = FileChannel.open(rotated.toPath(), StandardOpenOption.READ)) {
+                return reader.read(channel, position, handler);
+            }
+        }
+    }
+
+    protected boolean isCompressed(@NotNull final File file) {
+        return file.getName().endsWith(".gz");
+    }
+
+    /**
+     * @return a streaming decompression of the file using a bounded inflate buffer
+     */
+    protected @NotNull InputStream openCompressed(@NotNull final File file) throws IOException {
+        final InputStream input = new FileInputStream(file);
+        try {
+            return new GZIPInputStream(input, INFLATE_BUFFER_SIZE);
+        } catch (IOException ex) {
+            input.close();
+            throw ex;
+        }
+    }
+
+    protected @NotNull LogfileReader acquireReader() {
+        final LogfileReader reader = readerPool.poll();
+        return reader != null ? reader : new LogfileReader();
+    }
+
+    protected void releaseReader(@NotNull final LogfileReader reader) {
+        if (readerPool.size() < READER_POOL_SIZE) {
+            readerPool.offer(reader);
+        }
+    }
+}
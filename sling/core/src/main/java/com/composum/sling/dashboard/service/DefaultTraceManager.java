@@ -2,6 +2,7 @@ package com.composum.sling.dashboard.service;
 
 import com.composum.sling.dashboard.service.TraceService.Level;
 import com.composum.sling.dashboard.service.TraceService.TraceEntry;
+import com.composum.sling.dashboard.service.TraceService.TraceListener;
 import org.apache.commons.lang3.StringUtils;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -19,7 +20,11 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Component(
         service = {TraceManager.class},
@@ -28,31 +33,109 @@ import java.util.TreeMap;
 @Designate(ocd = DefaultTraceManager.Config.class)
 public class DefaultTraceManager implements TraceManager {
 
-    protected final Map<String, TraceService> traceServices = new TreeMap<>();
+    /**
+     * a subscription which buffers the entries in a bounded queue, on overflow the oldest entry is dropped
+     */
+    protected static class QueueSubscription implements Subscription, TraceListener {
+
+        protected final TraceService trace;
+        protected final BlockingQueue<TraceEntry> queue;
+        protected final AtomicLong dropped = new AtomicLong();
+
+        protected QueueSubscription(@NotNull final TraceService trace, int capacity) {
+            this.trace = trace;
+            this.queue = new ArrayBlockingQueue<>(Math.max(capacity, 1));
+        }
+
+        @Override
+        public void onEntry(@NotNull final TraceService trace, @NotNull final TraceEntry entry) {
+            while (!queue.offer(entry)) {
+                if (queue.poll() != null) {
+                    dropped.incrementAndGet();
+                }
+            }
+        }
+
+        @Override
+        public @Nullable TraceEntry poll(long timeout) throws InterruptedException {
+            return queue.poll(timeout, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public long getDropped() {
+            return dropped.get();
+        }
+
+        @Override
+        public void close() {
+            trace.removeListener(this);
+        }
+    }
+
+    /** the order of the traces: by rank, services of the same rank by label */
+    protected static final Comparator<TraceService> TRACE_ORDER =
+            Comparator.comparingInt(TraceService::getRank).thenComparing(TraceService::getLabel);
+
+    protected final Map<String, TraceService> traceServices = new ConcurrentHashMap<>();
+
+    /** the sorted (immutable) list of the traces, rebuilt if a service is bound, updated or unbound */
+    protected volatile List<TraceService> sortedTraces = Collections.emptyList();
 
     @Reference(
             service = TraceService.class,
             policy = ReferencePolicy.DYNAMIC,
             cardinality = ReferenceCardinality.MULTIPLE,
-            policyOption = ReferencePolicyOption.GREEDY
+            policyOption = ReferencePolicyOption.GREEDY,
+            updated = "updatedTraceService"
     )
     protected void bindTraceService(@NotNull final TraceService service) {
         synchronized (traceServices) {
             traceServices.put(service.getName(), service);
+            sortTraces();
+        }
+    }
+
+    /**
+     * a modified service configuration can change the name, the rank and the label of the service
+     */
+    protected void updatedTraceService(@NotNull final TraceService service) {
+        synchronized (traceServices) {
+            traceServices.values().removeIf(bound -> bound == service);
+            traceServices.put(service.getName(), service);
+            sortTraces();
         }
     }
 
     protected void unbindTraceService(@NotNull final TraceService service) {
         synchronized (traceServices) {
-            traceServices.remove(service.getName());
+            traceServices.remove(service.getName(), service);
+            sortTraces();
         }
     }
 
+    protected void sortTraces() {
+        final List<TraceService> traces = new ArrayList<>(traceServices.values());
+        traces.sort(TRACE_ORDER);
+        sortedTraces = Collections.unmodifiableList(traces);
+    }
+
     @Override
     public @Nullable TraceService getTrace(@Nullable final String context) {
         return StringUtils.isNotBlank(context) ? traceServices.get(context) : traceServices.get("default");
     }
 
+    @Override
+    public @Nullable Subscription subscribe(@Nullable final String context, int capacity) {
+        TraceService trace = getTrace(context);
+        if (trace != null) {
+            final QueueSubscription subscription = new QueueSubscription(trace, capacity);
+            if (trace.addListener(subscription)) {
+                return subscription;
+            }
+        }
+        return null;
+    }
+
     @Override
     public int getTraceNumber() {
         return traceServices.size();
@@ -60,18 +143,7 @@ public class DefaultTraceManager implements TraceManager {
 
     @Override
     public @NotNull Iterable<TraceService> getTraces() {
-        List<TraceService> traces = new ArrayList<>(traceServices.values());
-        traces.sort(new Comparator<>() {
-
-            public static final String KEY_FMT = "%04d:%s";
-
-            @Override
-            public int compare(TraceService o1, TraceService o2) {
-                return String.format(KEY_FMT, o1.getRank(), o1.getLabel())
-                        .compareTo(String.format(KEY_FMT, o2.getRank(), o1.getLabel()));
-            }
-        });
-        return traces;
+        return sortedTraces;
     }
 
     @Override
@@ -90,6 +162,12 @@ public class DefaultTraceManager implements TraceManager {
         return trace != null ? trace.getEntries(level) : Collections.emptyList();
     }
 
+    @Override
+    public @NotNull Iterable<TraceEntry> getEntriesSince(@Nullable final String context, long sequence) {
+        TraceService trace = getTrace(context);
+        return trace != null ? trace.getEntriesSince(sequence) : Collections.emptyList();
+    }
+
     @ObjectClassDefinition(name = "Composum Dashboard Default Trace Manager",
             description = "Configuration to enable default trace services")
     public @interface Config {
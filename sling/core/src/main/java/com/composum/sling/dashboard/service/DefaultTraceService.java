@@ -2,6 +2,11 @@ package com.composum.sling.dashboard.service;
 
 import com.composum.sling.dashboard.servlet.ConfigurationConstants;
 import com.composum.sling.dashboard.util.Properties;
+import com.composum.sling.dashboard.util.RateLimiter;
+import com.composum.sling.dashboard.util.RingBuffer;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 import com.google.gson.stream.JsonWriter;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.sling.api.resource.ValueMap;
@@ -10,19 +15,32 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Modified;
 import org.osgi.service.metatype.annotations.AttributeDefinition;
 import org.osgi.service.metatype.annotations.Designate;
 import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Component(
         service = {TraceService.class}, immediate = true
@@ -30,6 +48,16 @@ import java.util.Map;
 @Designate(ocd = DefaultTraceService.Config.class, factory = true)
 public class DefaultTraceService implements TraceService {
 
+    private static final Logger LOG = LoggerFactory.getLogger(DefaultTraceService.class);
+
+    public static final String DEFAULT_TIME_FORMAT = "yyyy-MM-dd HH:mm:ss.SSSZ";
+
+    /** the max number of persisted entries read on activation */
+    public static final int RESTORE_MAX = 10000;
+
+    /** the max duration of a run of collapsed duplicates (milliseconds), a later repetition starts a new run */
+    public static final long COLLAPSE_PERIOD = 60000L;
+
     @ObjectClassDefinition(name = "Composum Dashboard Default Trace Service")
     @interface Config {
 
@@ -51,35 +79,130 @@ public class DefaultTraceService implements TraceService {
         @AttributeDefinition(name = "Keep Max")
         int keepMax() default 50;
 
+        @AttributeDefinition(name = "Collapse Duplicates",
+                description = "if 'true' consecutive entries with the same level, reference and message template "
+                        + "are collapsed into one entry with a repeat count, the end of such a run is traced "
+                        + "as an entry which reports the number of repetitions (disabled by default)")
+        boolean collapseDuplicates() default false;
+
+        @AttributeDefinition(name = "Rate Limit",
+                description = "the max number of entries per second (and the burst size), further entries are "
+                        + "suppressed and counted; '0' (the default) disables the rate limit")
+        int rateLimit() default 0;
+
         @AttributeDefinition(name = "Time Format")
-        String timeFormat() default "yyyy-MM-dd HH:mm:ss.SSSZ";
+        String timeFormat() default DEFAULT_TIME_FORMAT;
 
         @AttributeDefinition(name = ConfigurationConstants.CFG_RANK_NAME, description = ConfigurationConstants.CFG_RANK_DESCRIPTION)
         int rank() default 1000;
+
+        @AttributeDefinition(name = "Persistence Path",
+                description = "the directory to persist the trace entries (daily JSONL files), the buffers are "
+                        + "restored from these files on activation; persistence is disabled if not set")
+        String persistencePath();
+
+        @AttributeDefinition(name = "Persistence Queue",
+                description = "the max number of entries waiting to be written, further entries are not persisted")
+        int persistenceQueue() default 10000;
+
+        @AttributeDefinition(name = "Persistence Max Age",
+                description = "the number of days to keep the trace files, '0' to keep the files independent of age")
+        int persistenceMaxAge() default 7;
+
+        @AttributeDefinition(name = "Persistence Max Size",
+                description = "the max size (MB) of all trace files of the service, '0' if not limited")
+        int persistenceMaxSize() default 100;
     }
 
     protected class DefaultTraceEntry implements TraceEntry {
 
-        private final Date time;
+        private final long sequence;
+        private final long timestamp;
         private final Level level;
         private final String reference;
         private final String message;
         private final Object[] args;
 
+        private final AtomicInteger count = new AtomicInteger(1);
+        private volatile long lastTimestamp;
+        private final AtomicBoolean runEnded = new AtomicBoolean();
+
+        private transient String formattedMessage;
         private transient ValueMap properties;
 
         protected DefaultTraceEntry(@NotNull final Level level, @Nullable final String reference,
                                     @NotNull final String message, @Nullable final Object[] args) {
-            this.time = new Date(System.currentTimeMillis());
+            this(System.currentTimeMillis(), level, reference, message, args);
+        }
+
+        protected DefaultTraceEntry(long timestamp, @NotNull final Level level, @Nullable final String reference,
+                                    @NotNull final String message, @Nullable final Object[] args) {
+            this(sequenceCounter.incrementAndGet(), timestamp, level, reference, message, args);
+        }
+
+        protected DefaultTraceEntry(long sequence, long timestamp, @NotNull final Level level,
+                                    @Nullable final String reference, @NotNull final String message,
+                                    @Nullable final Object[] args) {
+            this.sequence = sequence;
+            this.timestamp = timestamp;
+            this.lastTimestamp = timestamp;
             this.level = level;
             this.reference = reference;
             this.message = message;
             this.args = args != null ? args : new Object[0];
         }
 
+        /**
+         * @return the service wide sequence number which orders the entries of both trace buffers
+         */
+        @Override
+        public long getSequence() {
+            return sequence;
+        }
+
+        @Override
+        public long getTimestamp() {
+            return timestamp;
+        }
+
         @Override
         public @NotNull Date getTime() {
-            return time;
+            return new Date(timestamp);
+        }
+
+        @Override
+        public int getCount() {
+            return count.get();
+        }
+
+        @Override
+        public long getLastTimestamp() {
+            return lastTimestamp;
+        }
+
+        /**
+         * @return 'true' if the entry has the same level, reference and message template
+         */
+        protected boolean isRepeatedBy(@NotNull final Level level, @Nullable final String reference,
+                                       @NotNull final String message) {
+            return this.level == level && Objects.equals(this.reference, reference) && this.message.equals(message);
+        }
+
+        protected void repeated(int count, long timestamp) {
+            this.count.addAndGet(count);
+            this.lastTimestamp = timestamp;
+        }
+
+        /**
+         * @return the entry which reports the repetitions collapsed into this entry, 'null' if this entry has
+         * not been repeated or the run of repetitions is already ended
+         */
+        protected @Nullable DefaultTraceEntry endRun() {
+            final int count = getCount();
+            return count > 1 && runEnded.compareAndSet(false, true)
+                    ? new DefaultTraceEntry(level, reference, "%s (repeated %d times)",
+                    new Object[]{getMessage(), count - 1, Collections.singletonMap("count", count)})
+                    : null;
         }
 
         @Override
@@ -94,6 +217,13 @@ public class DefaultTraceService implements TraceService {
 
         @Override
         public @NotNull String getMessage() {
+            if (formattedMessage == null) {
+                formattedMessage = formatMessage();
+            }
+            return formattedMessage;
+        }
+
+        protected @NotNull String formatMessage() {
             try {
                 return args.length > 1 || (args.length == 1 && !(args[0] instanceof Map))
                         ? String.format(message, args) : message;
@@ -120,9 +250,17 @@ public class DefaultTraceService implements TraceService {
         @Override
         public void toJson(@NotNull JsonWriter writer) throws IOException {
             writer.beginObject();
-            writer.name("time").value(new SimpleDateFormat(timeFormat).format(getTime()));
+            writer.name("sequence").value(getSequence());
+            writer.name("timestamp").value(getTimestamp());
+            writer.name("time").value(timeFormatter.format(Instant.ofEpochMilli(getTimestamp())));
             writer.name("level").value(getLevel().name().toLowerCase());
             writer.name("message").value(getMessage());
+            final int count = getCount();
+            if (count > 1) {
+                writer.name("count").value(count);
+                writer.name("lastTimestamp").value(getLastTimestamp());
+                writer.name("lastTime").value(timeFormatter.format(Instant.ofEpochMilli(getLastTimestamp())));
+            }
             final String reference = getReference();
             if (reference != null) {
                 writer.name("reference").value(reference);
@@ -136,6 +274,74 @@ public class DefaultTraceService implements TraceService {
         }
     }
 
+    /**
+     * an immutable merged snapshot of the buffers, valid as long as the buffers counters are unchanged
+     */
+    protected static class Snapshot {
+
+        protected final long keepCount;
+        protected final long traceCount;
+        protected final List<TraceEntry> entries;
+
+        protected Snapshot(long keepCount, long traceCount, @NotNull final List<TraceEntry> entries) {
+            this.keepCount = keepCount;
+            this.traceCount = traceCount;
+            this.entries = entries;
+        }
+    }
+
+    /**
+     * the lock-free buffers of the entries of the keep level (or higher) and of all other entries with the
+     * number of buffered entries per level; the buffers are replaced as a whole on each configuration change
+     */
+    protected static class TraceBuffers {
+
+        protected final RingBuffer<DefaultTraceEntry> keepEntries;
+        protected final RingBuffer<DefaultTraceEntry> traceEntries;
+        protected final AtomicIntegerArray levelCounts = new AtomicIntegerArray(Level.values().length);
+
+        protected volatile Snapshot snapshot;
+
+        protected TraceBuffers(int keepMax, int traceMax) {
+            keepEntries = new RingBuffer<>(keepMax);
+            traceEntries = new RingBuffer<>(traceMax);
+        }
+
+        protected void add(@NotNull final RingBuffer<DefaultTraceEntry> buffer, @NotNull final DefaultTraceEntry entry) {
+            levelCounts.incrementAndGet(entry.getLevel().ordinal());
+            final DefaultTraceEntry removed = buffer.add(entry);
+            if (removed != null) {
+                levelCounts.decrementAndGet(removed.getLevel().ordinal());
+            }
+        }
+
+        protected int getNumber(@NotNull final Level level) {
+            return Math.max(levelCounts.get(level.ordinal()), 0);
+        }
+
+        /**
+         * @return the entries of both buffers in the order of their sequence; the merged snapshot is reused
+         * until a new entry is added
+         */
+        protected @NotNull List<TraceEntry> getEntries() {
+            final long keepCount = keepEntries.getCount();
+            final long traceCount = traceEntries.getCount();
+            Snapshot current = snapshot;
+            if (current == null || current.keepCount != keepCount || current.traceCount != traceCount) {
+                final List<DefaultTraceEntry> entries = new ArrayList<>(keepEntries.snapshot());
+                entries.addAll(traceEntries.snapshot());
+                entries.sort(Comparator.comparingLong(DefaultTraceEntry::getSequence));
+                current = new Snapshot(keepCount, traceCount, Collections.unmodifiableList(entries));
+                // an entry claimed but not written yet is missing; such an incomplete snapshot is not reused
+                if (entries.size() == Math.min(keepCount, keepEntries.getCapacity())
+                        + Math.min(traceCount, traceEntries.getCapacity())) {
+                    snapshot = current;
+                }
+            }
+            return current.entries;
+        }
+    }
+
     protected String name;
     protected String label;
     protected Level traceLevel;
@@ -143,17 +349,27 @@ public class DefaultTraceService implements TraceService {
     protected Level keepLevel;
     protected int keepMax;
     protected String timeFormat;
+    protected DateTimeFormatter timeFormatter;
     protected int rank;
 
-    protected int keepLevelCount;
-    protected final List<TraceEntry> entries = new ArrayList<>();
+    protected final AtomicLong sequenceCounter = new AtomicLong();
+
+    protected volatile TraceBuffers buffers = new TraceBuffers(0, 0);
+
+    protected final List<TraceListener> listeners = new CopyOnWriteArrayList<>();
+
+    protected volatile TracePersistence persistence;
+
+    protected boolean collapseDuplicates;
+    protected volatile RateLimiter rateLimiter;
+    protected final AtomicLong suppressed = new AtomicLong();
+    protected volatile DefaultTraceEntry lastEntry;
 
     @Activate
     @Modified
     protected void activate(Config config) {
         name = config.name();
         label = config.label();
-        entries.clear();
         try {
             traceLevel = Level.valueOf(config.traceLevel().toUpperCase());
         } catch (IllegalArgumentException ignore) {
@@ -166,9 +382,86 @@ public class DefaultTraceService implements TraceService {
             keepLevel = Level.ERROR;
         }
         keepMax = Math.min(Math.max(0, config.keepMax()), 1000);
-        keepLevelCount = 0;
+        buffers = new TraceBuffers(keepMax, traceMax);
+        lastEntry = null;
+        collapseDuplicates = config.collapseDuplicates();
+        rateLimiter = config.rateLimit() > 0 ? new RateLimiter(config.rateLimit(), config.rateLimit()) : null;
         timeFormat = config.timeFormat();
+        try {
+            timeFormatter = DateTimeFormatter.ofPattern(timeFormat).withZone(ZoneId.systemDefault());
+        } catch (IllegalArgumentException ex) {
+            LOG.error("invalid time format '{}': {}", timeFormat, ex.toString());
+            timeFormat = DEFAULT_TIME_FORMAT;
+            timeFormatter = DateTimeFormatter.ofPattern(timeFormat).withZone(ZoneId.systemDefault());
+        }
         rank = config.rank();
+        closePersistence();
+        if (StringUtils.isNotBlank(config.persistencePath())) {
+            // the restored entries are numbered before the entries traced during the restore
+            final TraceBuffers buffers = this.buffers;
+            final long restoreSequence = sequenceCounter.getAndAdd(RESTORE_MAX);
+            this.persistence = new TracePersistence(new File(config.persistencePath()), name,
+                    config.persistenceQueue(), Math.max(config.persistenceMaxAge(), 0) * 86400000L,
+                    Math.max(config.persistenceMaxSize(), 0) * 1024L * 1024L,
+                    RESTORE_MAX, persisted -> restore(buffers, restoreSequence, persisted));
+        }
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        closePersistence();
+    }
+
+    protected void closePersistence() {
+        final TracePersistence persistence = this.persistence;
+        this.persistence = null;
+        if (persistence != null) {
+            persistence.close();
+        }
+    }
+
+    /**
+     * fills the buffers with the last persisted entries, called by the writer thread of the persistence; the
+     * entries are numbered in the range of sequences reserved on activation to keep them before the entries
+     * traced during the restore, a buffer is filled up to its free capacity only (the entries traced during the
+     * restore are not replaced); more entries than the buffers capacity are read to find the entries of the keep
+     * level between the other entries
+     */
+    @SuppressWarnings("unchecked")
+    protected void restore(@NotNull final TraceBuffers buffers, long sequence,
+                           @NotNull final List<JsonObject> persisted) {
+        final Gson gson = new Gson();
+        final List<DefaultTraceEntry> keepEntries = new ArrayList<>();
+        final List<DefaultTraceEntry> traceEntries = new ArrayList<>();
+        for (final JsonObject json : persisted) {
+            try {
+                final Level level = Level.valueOf(json.get("level").getAsString().toUpperCase());
+                final JsonElement reference = json.get("reference");
+                final JsonElement properties = json.get("properties");
+                final DefaultTraceEntry entry = new DefaultTraceEntry(++sequence,
+                        json.get("timestamp").getAsLong(), level,
+                        reference != null ? reference.getAsString() : null, json.get("message").getAsString(),
+                        new Object[]{properties != null ? gson.fromJson(properties, Map.class) : Collections.emptyMap()});
+                final JsonElement count = json.get("count");
+                if (count != null) {
+                    entry.repeated(count.getAsInt() - 1, json.get("lastTimestamp").getAsLong());
+                }
+                (isKeepLevel(level) ? keepEntries : traceEntries).add(entry);
+            } catch (RuntimeException ex) {
+                LOG.warn("restore '{}': {}", name, ex.toString());
+            }
+        }
+        restoreEntries(buffers, buffers.keepEntries, keepEntries);
+        restoreEntries(buffers, buffers.traceEntries, traceEntries);
+    }
+
+    protected void restoreEntries(@NotNull final TraceBuffers buffers,
+                                  @NotNull final RingBuffer<DefaultTraceEntry> buffer,
+                                  @NotNull final List<DefaultTraceEntry> entries) {
+        final long free = Math.max(buffer.getCapacity() - buffer.getCount(), 0);
+        for (int i = (int) Math.max(entries.size() - free, 0); i < entries.size(); i++) {
+            buffers.add(buffer, entries.get(i));
+        }
     }
 
     @Override
@@ -186,51 +479,143 @@ public class DefaultTraceService implements TraceService {
         return rank;
     }
 
+    /**
+     * adds the entry to the buffer of its level without any locking; the entries of the keep level (or higher)
+     * are kept up to the 'keepMax' independent of the amount of the other entries (up to the 'traceMax');
+     * a repetition of the last entry (same level, reference and message template) is collapsed into the last
+     * entry; the count is updated in place and published by an entry added at the end of the run, so that the
+     * incremental readers (polling, streams and persistence) are receiving the number of repetitions too;
+     * entries beyond the rate limit are suppressed and reported by a warning with the next entry if warnings
+     * are traced, otherwise the suppression is logged only
+     */
     @Override
     public void trace(@NotNull final Level level, @Nullable final String reference,
                       @NotNull final String message, final Object... args) {
         if (traceLevel.compareTo(level) >= 0) {
-            synchronized (entries) {
-                int max = traceMax + (keepLevel.compareTo(level) >= 0 ? keepMax : keepLevelCount);
-                while (entries.size() >= max) {
-                    int index = 0;
-                    if (keepLevelCount < keepMax || keepLevel.compareTo(level) < 0) {
-                        while (index <= keepLevelCount && keepLevel.compareTo(entries.get(index).getLevel()) >= 0) {
-                            index++;
-                        }
-                    }
-                    TraceEntry entry = entries.remove(index);
-                    if (keepLevel.compareTo(entry.getLevel()) >= 0) {
-                        keepLevelCount--;
-                    }
+            final DefaultTraceEntry last = lastEntry;
+            if (collapseDuplicates && last != null && last.isRepeatedBy(level, reference, message)) {
+                final long now = System.currentTimeMillis();
+                if (now - last.getTimestamp() < COLLAPSE_PERIOD) {
+                    last.repeated(1, now);
+                    return;
                 }
-                entries.add(new DefaultTraceEntry(level, reference, message, args));
-                if (keepLevel.compareTo(level) >= 0) {
-                    keepLevelCount++;
+            }
+            final RateLimiter rateLimiter = this.rateLimiter;
+            if (rateLimiter != null && !rateLimiter.tryAcquire()) {
+                suppressed.incrementAndGet();
+                return;
+            }
+            if (last != null) {
+                final DefaultTraceEntry runEnd = last.endRun();
+                if (runEnd != null) {
+                    add(runEnd);
+                }
+            }
+            final long suppressedCount = suppressed.getAndSet(0);
+            if (suppressedCount > 0) {
+                if (traceLevel.compareTo(Level.WARNING) >= 0) {
+                    add(new DefaultTraceEntry(Level.WARNING, null,
+                            "%d trace entries suppressed by the rate limit", new Object[]{suppressedCount}));
+                } else {
+                    LOG.warn("{}: {} trace entries suppressed by the rate limit", name, suppressedCount);
                 }
             }
+            add(new DefaultTraceEntry(level, reference, message, args));
+        }
+    }
+
+    /**
+     * adds a new entry to the buffer of its level, to the persistence queue and notifies the listeners
+     */
+    protected void add(@NotNull final DefaultTraceEntry entry) {
+        final Level level = entry.getLevel();
+        lastEntry = entry;
+        final TraceBuffers buffers = this.buffers;
+        buffers.add(isKeepLevel(level) ? buffers.keepEntries : buffers.traceEntries, entry);
+        final TracePersistence persistence = this.persistence;
+        if (persistence != null) {
+            persistence.offer(entry);
+        }
+        for (final TraceListener listener : listeners) {
+            try {
+                listener.onEntry(this, entry);
+            } catch (RuntimeException ex) {
+                LOG.error(ex.getMessage(), ex);
+            }
         }
     }
 
+    @Override
+    public boolean addListener(@NotNull final TraceListener listener) {
+        return listeners.add(listener);
+    }
+
+    @Override
+    public void removeListener(@NotNull final TraceListener listener) {
+        listeners.remove(listener);
+    }
+
+    protected boolean isKeepLevel(@NotNull final Level level) {
+        return keepLevel.compareTo(level) >= 0;
+    }
+
+    /**
+     * @return an immutable snapshot of both buffers merged in the order of the entries sequence,
+     * the reading never blocks the tracing threads
+     */
     @Override
     public @NotNull Iterable<TraceEntry> getEntries(@Nullable Level level) {
-        List<TraceEntry> result = new ArrayList<>();
-        for (TraceEntry entry : entries) {
-            if (level == null || entry.getLevel().compareTo(level) >= 0) {
+        final List<TraceEntry> entries = buffers.getEntries();
+        if (level == null) {
+            return entries;
+        }
+        final List<TraceEntry> result = new ArrayList<>();
+        for (final TraceEntry entry : entries) {
+            if (entry.getLevel().compareTo(level) >= 0) {
                 result.add(entry);
             }
         }
-        return result;
+        return Collections.unmodifiableList(result);
     }
 
+    /**
+     * @return the tail of the merged snapshot located by a binary search of the sequence
+     */
     @Override
-    public int getNumber(@NotNull Level level) {
-        int count = 0;
-        for (TraceEntry entry : entries) {
-            if (entry.getLevel() == level) {
-                count++;
+    public @NotNull Iterable<TraceEntry> getEntriesSince(long sequence) {
+        final List<TraceEntry> entries = buffers.getEntries();
+        int low = 0;
+        int high = entries.size();
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (entries.get(mid).getSequence() <= sequence) {
+                low = mid + 1;
+            } else {
+                high = mid;
             }
         }
-        return count;
+        return entries.subList(low, entries.size());
+    }
+
+    /**
+     * @return the sequence of the last entry of the merged snapshot
+     */
+    @Override
+    public long getLastSequence() {
+        final List<TraceEntry> entries = buffers.getEntries();
+        return entries.isEmpty() ? 0L : entries.get(entries.size() - 1).getSequence();
+    }
+
+    /**
+     * @return the number of buffered entries of the level maintained by atomic counters
+     */
+    @Override
+    public int getNumber(@NotNull Level level) {
+        return buffers.getNumber(level);
+    }
+
+    @Override
+    public int getMaxEntries() {
+        return keepMax + traceMax;
     }
 }
@@ -0,0 +1,206 @@
+package com.composum.sling.dashboard.service;
+
+import com.composum.sling.dashboard.util.LogfileReader.LineHandler;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.regex.Pattern;
+
+/**
+ * a JVM wide service which tails each logfile only once and shares the summary (the index) of the files content
+ * with all sessions which are viewing the logfile; the viewers are keeping only their own read position
+ */
+public interface LogfileService {
+
+    /**
+     * a snapshot of the error and warning counts per time bucket
+     */
+    class Histogram {
+
+        protected final long start;
+        protected final long bucketSize;
+        protected final int[] errors;
+        protected final int[] warnings;
+
+        public Histogram(long start, long bucketSize, @NotNull final int[] errors, @NotNull final int[] warnings) {
+            this.start = start;
+            this.bucketSize = bucketSize;
+            this.errors = errors;
+            this.warnings = warnings;
+        }
+
+        /**
+         * @return the start time of the first bucket (epoch milliseconds)
+         */
+        public long getStart() {
+            return start;
+        }
+
+        /**
+         * @return the time period of one bucket (milliseconds)
+         */
+        public long getBucketSize() {
+            return bucketSize;
+        }
+
+        public @NotNull int[] getErrors() {
+            return errors;
+        }
+
+        public @NotNull int[] getWarnings() {
+            return warnings;
+        }
+
+        /**
+         * @param buckets the max number of buckets of the result
+         * @return the histogram with the counts summarized to bigger buckets
+         */
+        public @NotNull Histogram aggregate(int buckets) {
+            final int factor = Math.max(1, (errors.length + buckets - 1) / buckets);
+            final int length = (errors.length + factor - 1) / factor;
+            final int[] errorSums = new int[length];
+            final int[] warningSums = new int[length];
+            for (int i = 0; i < errors.length; i++) {
+                errorSums[i / factor] += errors[i];
+                warningSums[i / factor] += warnings[i];
+            }
+            return new Histogram(start, bucketSize * factor, errorSums, warningSums);
+        }
+    }
+
+    /**
+     * the index of one logfile, the content is indexed starting at the size limit position determined on the
+     * first access, the index is extended on each update by the lines appended to the file; if the file is
+     * rotated or truncated a new generation of the file is started, the counters are continued;
+     * a compressed archive ('.gz') is indexed completely, all positions are positions in the uncompressed content
+     */
+    interface Logfile {
+
+        /** the reading position which means the size limit position relative to the current size of the file */
+        long LIMITED_START = -1L;
+
+        @NotNull File getFile();
+
+        /**
+         * @return the number of rotations (or truncations) of the file since the first access
+         */
+        int getGeneration();
+
+        /**
+         * @return the position of the first indexed line of the current generation
+         */
+        long getStartPosition();
+
+        /**
+         * @return the position after the last indexed line
+         */
+        long getPosition();
+
+        int getLines();
+
+        int getErrors();
+
+        int getWarnings();
+
+        /**
+         * @return the error and warning counts per minute of the last day (of the last logged day for an archive)
+         */
+        @NotNull Histogram getHistogram();
+
+        /**
+         * reads the lines appended to the file since the last update and extends the index
+         */
+        void update();
+
+        /**
+         * requests an update without waiting for it if the update can take a while; a compressed archive is
+         * indexed in the background, the index of the archive is empty until the indexing is done
+         */
+        void requestUpdate();
+
+        /**
+         * @return the current size of the file content, the uncompressed size of an archive
+         */
+        long getSize();
+
+        /**
+         * reads the lines starting at the given position; if the position is negative ({@link #LIMITED_START})
+         * the reading starts at the size limit position relative to the current size of the file
+         *
+         * @param position the reading start position
+         * @param handler  the consumer of the lines read
+         * @return the position after the last line read
+         */
+        long read(long position, @NotNull LineHandler handler) throws IOException;
+
+        /**
+         * reads the lines starting at the given position until the given amount of bytes is consumed
+         *
+         * @param position the reading start position
+         * @param maxBytes the amount of bytes after which the reading should stop
+         * @param handler  the consumer of the lines read
+         * @return the position after the last line read
+         * @see #read(long, LineHandler)
+         */
+        long read(long position, long maxBytes, @NotNull LineHandler handler) throws IOException;
+
+        /**
+         * reads the rest of the previous generation (the rotated file, maybe compressed meanwhile) starting at
+         * the given position; nothing is read if the rotated file is not available
+         *
+         * @param position the reading start position in the previous generation
+         * @param handler  the consumer of the lines read
+         */
+        void readRotated(long position, @NotNull LineHandler handler) throws IOException;
+
+        /**
+         * determines the position of the first line logged at or after the given time by a binary search in the
+         * sparse time index of the indexed content or by probes of the file content before the indexed content
+         *
+         * @param time the time (epoch milliseconds)
+         * @return the position of the first line with a timestamp at or after the time,
+         * the end position if no such line exists
+         */
+        long seek(long time) throws IOException;
+
+        /**
+         * searches the lines matching the pattern and the time range starting at the given position; the file
+         * is scanned in line aligned chunks in parallel, the hits are delivered in the order of their positions;
+         * lines without a timestamp (e.g. stack traces) are assigned to the time of the previous line
+         *
+         * @param position the search start position (a line start), '0' to search the complete file
+         * @param pattern  the pattern to find in the lines
+         * @param from     the start of the time range (epoch milliseconds), 'null' if not restricted
+         * @param to       the end of the time range (exclusive), 'null' if not restricted
+         * @param limit    the max number of hits to deliver
+         * @param handler  the consumer of the hits
+         * @return the position to continue the search (the line after the last hit), the end position of the
+         * searched content if the search has reached the end of the content or of the time range
+         */
+        long search(long position, @NotNull Pattern pattern, @Nullable Long from, @Nullable Long to,
+                    int limit, @NotNull LineHandler handler) throws IOException;
+
+        /**
+         * waits until the logfile is extended beyond the given position or a new generation is started;
+         * the file is watched by the services poller during the wait
+         *
+         * @param generation the generation known by the caller
+         * @param position   the position known by the caller
+         * @param timeout    the max time to wait (milliseconds)
+         * @return 'true' if the file has been changed
+         */
+        boolean awaitChange(int generation, long position, long timeout) throws InterruptedException;
+    }
+
+    /**
+     * @param file           the logfile to index
+     * @param errorPattern   the pattern to count the error lines
+     * @param warningPattern the pattern to count the warning lines
+     * @param sizeLimit      the size limit (bytes) of the indexed content, part of the key of the shared index
+     * @return the shared index of the logfile, 'null' if the file is not readable
+     */
+    @Nullable Logfile getLogfile(@NotNull File file,
+                                 @NotNull Pattern errorPattern, @NotNull Pattern warningPattern, long sizeLimit);
+}
@@ -1,5 +1,6 @@
 package com.composum.sling.dashboard.service;
 
+import com.composum.sling.dashboard.util.PathReferenceScanner;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
@@ -22,6 +23,12 @@ public interface ResourceExtractService {
     Pattern PATH_PATTERN = Pattern.compile("^/[^" + PATH_UNEXPECTED + "]+$");
     Pattern PATH_EMBEDDED = Pattern.compile("\"(?<path>/[^" + PATH_UNEXPECTED + "\"]+)\"");
 
+    /**
+     * the shared scanner for the path references according to the {@link #PATH_PATTERN} and the
+     * {@link #PATH_EMBEDDED} patterns (used instead of these patterns during the reference scan)
+     */
+    PathReferenceScanner PATH_SCANNER = new PathReferenceScanner(PATH_UNEXPECTED);
+
     enum Mode {MERGE, UPDATE, REPLACE}
 
     /**
@@ -37,6 +44,14 @@ public interface ResourceExtractService {
          * @throws Exception if an error occurs
          */
         void extract(@NotNull Resource source, @NotNull String targetPath) throws Exception;
+
+        /**
+         * @return 'true' if the resources are extracted to their target paths, 'false' if the extractor is using
+         * the source paths; the resources are extracted in the tree order of the paths used
+         */
+        default boolean isMappedToTarget() {
+            return true;
+        }
     }
 
     interface ExtractSession {
@@ -147,6 +162,8 @@ public interface ResourceExtractService {
     class PathMappingRule {
 
         public final Pattern sourcePathPattern;
+        /** the literal prefix of all source paths matching the source path pattern */
+        public final String sourcePathPrefix;
         public final Pattern sourceTypePattern;
         public final Integer maxDepth;
         public final String targetPathPattern;
@@ -154,11 +171,71 @@ public interface ResourceExtractService {
         public PathMappingRule(@NotNull final String expression) {
             final String[] parts = StringUtils.split(expression, ",", 4);
             sourcePathPattern = Pattern.compile(parts[0]);
+            sourcePathPrefix = literalPrefix(sourcePathPattern);
             sourceTypePattern = parts.length > 1 && StringUtils.isNotBlank(parts[1]) &&
                     !"*".equals(parts[1]) ? Pattern.compile(parts[1]) : null;
             maxDepth = parts.length > 2 && StringUtils.isNotBlank(parts[2]) &&
                     !"*".equals(parts[2]) ? Integer.parseInt(parts[2]) : null;
             targetPathPattern = parts.length > 3 && StringUtils.isNotBlank(parts[3]) ? parts[3] : null;
         }
+
+        /**
+         * @return the literal prefix of all strings matching the pattern, '' if there is no such prefix
+         * (e.g. if the pattern starts with a group or contains an alternative on the top level)
+         */
+        public static @NotNull String literalPrefix(@NotNull final Pattern pattern) {
+            final String regex = pattern.pattern();
+            if ((pattern.flags() & (Pattern.CASE_INSENSITIVE | Pattern.COMMENTS | Pattern.LITERAL)) != 0
+                    || hasAlternative(regex)) {
+                return "";
+            }
+            final StringBuilder prefix = new StringBuilder();
+            int pos = regex.startsWith("^") ? 1 : 0;
+            while (pos < regex.length()) {
+                char c = regex.charAt(pos);
+                if (c == '\\') {
+                    if (pos + 1 < regex.length() && !Character.isLetterOrDigit(regex.charAt(pos + 1))) {
+                        c = regex.charAt(pos + 1); // an escaped special character
+                        pos += 2;
+                    } else {
+                        break;
+                    }
+                } else if (".[]()*+?{}|$^".indexOf(c) < 0) {
+                    pos++;
+                } else {
+                    break;
+                }
+                if (pos < regex.length() && "*+?{".indexOf(regex.charAt(pos)) >= 0) {
+                    break; // a quantified character is not part of the prefix
+                }
+                prefix.append(c);
+            }
+            return prefix.toString();
+        }
+
+        /**
+         * @return 'true' if the regex contains a '|' outside of groups and character classes
+         */
+        protected static boolean hasAlternative(@NotNull final String regex) {
+            int depth = 0;
+            boolean charClass = false;
+            for (int pos = 0; pos < regex.length(); pos++) {
+                final char c = regex.charAt(pos);
+                if (c == '\\') {
+                    pos++;
+                } else if (charClass) {
+                    charClass = c != ']';
+                } else if (c == '[') {
+                    charClass = true;
+                } else if (c == '(') {
+                    depth++;
+                } else if (c == ')') {
+                    depth--;
+                } else if (c == '|' && depth == 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
     }
 }
@@ -0,0 +1,219 @@
+package com.composum.sling.dashboard.service;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.classic.spi.ThrowableProxy;
+import ch.qos.logback.classic.spi.ThrowableProxyUtil;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import com.composum.sling.dashboard.service.TraceService.Level;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.ConfigurationPolicy;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * a Logback appender which routes the log events of the configured loggers into a trace service; the appender
+ * is registered as OSGi service and attached by the Sling Commons Log to the loggers named by the 'loggers'
+ * property; the logging thread only queues the event (lock-free, dropped if the queue is full), the events are
+ * handed over to the trace service by a drain thread, the messages are formatted when the entries are read
+ */
+@Component(
+        service = {Appender.class},
+        configurationPolicy = ConfigurationPolicy.REQUIRE, immediate = true
+)
+@Designate(ocd = TraceLogAppender.Config.class, factory = true)
+public class TraceLogAppender extends UnsynchronizedAppenderBase<ILoggingEvent> {
+
+    @ObjectClassDefinition(name = "Composum Dashboard Trace Log Appender")
+    @interface Config {
+
+        @AttributeDefinition(name = "Loggers",
+                description = "the logger categories (e.g. 'com.composum.sling.core') which should be traced;"
+                        + " the loggers of the dashboard itself are never traced")
+        String[] loggers() default {
+                "com.composum.sling.core"
+        };
+
+        @AttributeDefinition(name = "Level",
+                description = "the min level of the log events to trace (error, warn, info, debug)")
+        String level() default "warn";
+
+        @AttributeDefinition(name = "Trace",
+                description = "the name of the trace service which receives the log events")
+        String trace() default "default";
+
+        @AttributeDefinition(name = "Queue Size",
+                description = "the max number of log events waiting for the handover to the trace service")
+        int queueSize() default 1000;
+    }
+
+    /** the logger category of the dashboard itself, never traced by the appender */
+    public static final String OWN_LOGGERS = "com.composum.sling.dashboard.";
+
+    /** the interval of the handover of the queued events (milliseconds) */
+    public static final long DRAIN_INTERVAL = 100L;
+
+    @Reference
+    protected TraceManager traceManager;
+
+    protected String trace;
+    protected int minLevel;
+    protected int queueSize;
+
+    protected final Queue<ILoggingEvent> queue = new ConcurrentLinkedQueue<>();
+    protected final AtomicInteger queued = new AtomicInteger();
+    protected final AtomicLong dropped = new AtomicLong();
+
+    protected volatile Thread drain;
+
+    @Activate
+    protected void activate(final Config config) {
+        setName("trace-" + config.trace());
+        trace = config.trace();
+        minLevel = ch.qos.logback.classic.Level.toLevel(config.level(), ch.qos.logback.classic.Level.WARN).toInt();
+        queueSize = Math.max(config.queueSize(), 1);
+        drain = new Thread(this::drain, "trace-appender-" + trace);
+        drain.setDaemon(true);
+        drain.start();
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        final Thread thread = drain;
+        drain = null;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * called by the logging thread: the event is queued only, nothing is formatted here
+     */
+    @Override
+    protected void append(@NotNull final ILoggingEvent event) {
+        if (event.getLevel().toInt() >= minLevel && !isOwnLogger(event.getLoggerName())) {
+            if (queued.incrementAndGet() <= queueSize) {
+                event.getThreadName(); // the thread name is determined lazily and must be the logging thread
+                queue.offer(event);
+            } else {
+                queued.decrementAndGet();
+                dropped.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * the log events of the dashboard itself (e.g. of the trace persistence) are never traced to avoid a
+     * feedback loop if the tracing itself is logging problems
+     */
+    protected static boolean isOwnLogger(@Nullable final String loggerName) {
+        return loggerName != null && loggerName.startsWith(OWN_LOGGERS);
+    }
+
+    protected void drain() {
+        while (drain == Thread.currentThread()) {
+            drainQueue();
+            try {
+                Thread.sleep(DRAIN_INTERVAL);
+            } catch (InterruptedException ex) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * hands over all queued events and traces the number of the events dropped since the last call
+     */
+    protected void drainQueue() {
+        ILoggingEvent event;
+        while ((event = queue.poll()) != null) {
+            queued.decrementAndGet();
+            handover(event);
+        }
+        final long droppedCount = dropped.getAndSet(0);
+        if (droppedCount > 0) {
+            traceManager.trace(trace, Level.WARNING, null,
+                    "%d log events dropped (trace appender queue full)", droppedCount);
+        }
+    }
+
+    /**
+     * passes the event to the trace service; the message pattern is converted into a format string, the event
+     * arguments are formatted by the trace entry if the message is read; a message without arguments is passed
+     * unchanged because the trace entry doesn't format a message without arguments
+     */
+    protected void handover(@NotNull final ILoggingEvent event) {
+        Object[] eventArgs = event.getArgumentArray() != null ? event.getArgumentArray() : new Object[0];
+        IThrowableProxy throwable = event.getThrowableProxy();
+        if (throwable == null && eventArgs.length > 0 && eventArgs[eventArgs.length - 1] instanceof Throwable) {
+            // the SLF4J convention: a throwable as the last argument is the exception of the event
+            throwable = new ThrowableProxy((Throwable) eventArgs[eventArgs.length - 1]);
+            eventArgs = Arrays.copyOf(eventArgs, eventArgs.length - 1);
+        }
+        final Object[] args = Arrays.copyOf(eventArgs, eventArgs.length + 1);
+        final Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("logger", event.getLoggerName());
+        properties.put("thread", event.getThreadName());
+        if (throwable != null) {
+            properties.put("exception", ThrowableProxyUtil.asString(throwable));
+        }
+        args[args.length - 1] = properties;
+        final String message = event.getMessage() != null ? event.getMessage() : "";
+        try {
+            traceManager.trace(trace, toLevel(event.getLevel()), event.getLoggerName(),
+                    eventArgs.length > 0 ? toFormat(message, eventArgs.length) : message, args);
+        } catch (RuntimeException ex) {
+            addError("handover failed: " + ex);
+        }
+    }
+
+    protected static @NotNull Level toLevel(@NotNull final ch.qos.logback.classic.Level level) {
+        final int value = level.toInt();
+        return value >= ch.qos.logback.classic.Level.ERROR_INT ? Level.ERROR
+                : value >= ch.qos.logback.classic.Level.WARN_INT ? Level.WARNING
+                : value >= ch.qos.logback.classic.Level.INFO_INT ? Level.INFO : Level.DEBUG;
+    }
+
+    /**
+     * @param pattern   the SLF4J message pattern ('{}' placeholders, '\\{}' for a literal '{}')
+     * @param argsCount the number of arguments, the placeholders without an argument are kept as they are
+     * @return the message pattern as format string ('%s' placeholders, '%' escaped)
+     */
+    protected static @NotNull String toFormat(@NotNull final String pattern, int argsCount) {
+        final StringBuilder format = new StringBuilder(pattern.length() + 8);
+        int placeholders = 0;
+        for (int i = 0; i < pattern.length(); i++) {
+            final char c = pattern.charAt(i);
+            if (c == '%') {
+                format.append("%%");
+            } else if (c == '\\' && i + 2 < pattern.length()
+                    && pattern.charAt(i + 1) == '{' && pattern.charAt(i + 2) == '}') {
+                format.append("{}");
+                i += 2;
+            } else if (c == '{' && i + 1 < pattern.length() && pattern.charAt(i + 1) == '}'
+                    && placeholders < argsCount) {
+                format.append("%s");
+                placeholders++;
+                i++;
+            } else {
+                format.append(c);
+            }
+        }
+        return format.toString();
+    }
+}
@@ -5,8 +5,34 @@ import com.composum.sling.dashboard.service.TraceService.TraceEntry;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.Closeable;
+
 public interface TraceManager {
 
+    /**
+     * The subscription of the entries of one trace service as they are traced. The entries are buffered in a
+     * bounded queue, if the subscriber is too slow the oldest entries are dropped.
+     */
+    interface Subscription extends Closeable {
+
+        /**
+         * @param timeout the max time to wait for an entry (milliseconds)
+         * @return the next entry traced, 'null' if no entry has been traced during the timeout
+         */
+        @Nullable TraceEntry poll(long timeout) throws InterruptedException;
+
+        /**
+         * @return the number of entries dropped since the start of the subscription
+         */
+        long getDropped();
+
+        /**
+         * Ends the subscription.
+         */
+        @Override
+        void close();
+    }
+
     /**
      * Adds a trace entry to the services trace buffer.
      *
@@ -28,6 +54,24 @@ public interface TraceManager {
      */
     @NotNull Iterable<TraceEntry> getEntries(@Nullable String context, @Nullable Level level);
 
+    /**
+     * Returns the buffered entries added after the entry with the given sequence number (the polling cursor).
+     *
+     * @param context  the key of the preferred trace service to use, if 'null' the default context is used
+     * @param sequence the sequence number of the last entry known by the caller, '0' to get all entries
+     * @return the entries with a higher sequence number in the order of their sequence
+     */
+    @NotNull Iterable<TraceEntry> getEntriesSince(@Nullable String context, long sequence);
+
+    /**
+     * Subscribes the entries of a trace service; the subscription must be closed if no longer needed.
+     *
+     * @param context  the key of the preferred trace service to use, if 'null' the default context is used
+     * @param capacity the max number of entries buffered for the subscriber
+     * @return the subscription, 'null' if the trace service is not available or doesn't notify listeners
+     */
+    @Nullable Subscription subscribe(@Nullable String context, int capacity);
+
     int getTraceNumber();
 
     @NotNull Iterable<TraceService> getTraces();
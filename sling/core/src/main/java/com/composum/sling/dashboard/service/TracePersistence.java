@@ -0,0 +1,264 @@
+package com.composum.sling.dashboard.service;
+
+import com.composum.sling.dashboard.service.TraceService.TraceEntry;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+import org.apache.commons.io.output.StringBuilderWriter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * the persistence of the entries of a trace service in daily JSONL files ('{name}.{yyyy-MM-dd}.jsonl');
+ * the entries are queued by the tracing threads without blocking (dropped if the queue is full) and written
+ * in batches by a single writer thread which is also removing the files beyond the age and size limits
+ */
+public class TracePersistence implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TracePersistence.class);
+
+    public static final String FILE_EXT = ".jsonl";
+
+    /** the max number of entries written at once */
+    public static final int BATCH_SIZE = 500;
+    /** the max time between a queued entry and its writing (milliseconds) */
+    public static final long FLUSH_INTERVAL = 1000L;
+    /** the interval of the retention checks (milliseconds) */
+    public static final long CLEANUP_INTERVAL = 10 * 60000L;
+
+    protected static final DateTimeFormatter FILE_DATE =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd").withZone(ZoneId.systemDefault());
+
+    protected final File directory;
+    protected final String name;
+    protected final long maxAge;
+    protected final long maxSize;
+    protected final Pattern filePattern;
+    protected final int restoreLimit;
+    protected final Consumer<List<JsonObject>> restorer;
+
+    protected final BlockingQueue<TraceEntry> queue;
+    protected final AtomicLong dropped = new AtomicLong();
+    protected final Thread writer;
+
+    protected volatile boolean running = true;
+    protected long nextCleanup;
+
+    /**
+     * @param directory    the directory of the trace files
+     * @param name         the name of the trace service (the files prefix)
+     * @param queueSize    the max number of entries waiting to be written
+     * @param maxAge       the max age of a trace file (milliseconds), '0' if not limited
+     * @param maxSize      the max size of all trace files of the service (bytes), '0' if not limited
+     * @param restoreLimit the max number of persisted entries to restore
+     * @param restorer     the consumer of the restored entries, called by the writer thread before the first
+     *                     entry is written (the reading doesn't delay the activation of the service)
+     */
+    public TracePersistence(@NotNull final File directory, @NotNull final String name,
+                            int queueSize, long maxAge, long maxSize,
+                            int restoreLimit, @Nullable final Consumer<List<JsonObject>> restorer) {
+        this.directory = directory;
+        this.name = name;
+        this.maxAge = maxAge;
+        this.maxSize = maxSize;
+        this.filePattern = Pattern.compile(
+                Pattern.quote(name + ".") + "\\d{4}-\\d{2}-\\d{2}" + Pattern.quote(FILE_EXT));
+        this.restoreLimit = restoreLimit;
+        this.restorer = restorer;
+        queue = new ArrayBlockingQueue<>(Math.max(queueSize, 1));
+        writer = new Thread(this::run, "trace-persistence-" + name);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * queues an entry for writing, never blocks
+     *
+     * @return 'false' if the queue is full and the entry has been dropped
+     */
+    public boolean offer(@NotNull final TraceEntry entry) {
+        if (running && queue.offer(entry)) {
+            return true;
+        }
+        dropped.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * @return the number of entries dropped because the writer couldn't keep up
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * stops the writer thread after writing the entries queued
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            writer.join(FLUSH_INTERVAL * 5);
+        } catch (InterruptedException ignore) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * reads the last persisted entries (the JSON objects written by {@link TraceEntry#toJson(JsonWriter)})
+     *
+     * @param limit the max number of entries to read
+     * @return the last entries in the order of their writing
+     */
+    public @NotNull List<JsonObject> restore(int limit) {
+        final Deque<JsonObject> entries = new ArrayDeque<>();
+        final List<File> files = getFiles();
+        for (int i = files.size(); --i >= 0 && entries.size() < limit; ) {
+            final Deque<JsonObject> fileEntries = new ArrayDeque<>();
+            try (BufferedReader reader = Files.newBufferedReader(files.get(i).toPath(), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    try {
+                        final JsonElement element = new JsonParser().parse(line);
+                        if (element.isJsonObject()) {
+                            fileEntries.addLast(element.getAsJsonObject());
+                            if (fileEntries.size() > limit - entries.size()) {
+                                fileEntries.removeFirst();
+                            }
+                        }
+                    } catch (JsonParseException ignore) {
+                        // an incomplete line (e.g. written during a crash)
+                    }
+                }
+            } catch (IOException ex) {
+                LOG.error("restore: {}", ex.toString());
+            }
+            while (!fileEntries.isEmpty()) {
+                entries.addFirst(fileEntries.removeLast());
+            }
+        }
+        return new ArrayList<>(entries);
+    }
+
+    protected void run() {
+        if (restorer != null) {
+            try {
+                restorer.accept(restore(restoreLimit));
+            } catch (RuntimeException ex) {
+                LOG.error("restoring trace '{}' failed: {}", name, ex.toString());
+            }
+        }
+        final List<TraceEntry> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                final TraceEntry entry = queue.poll(FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+                if (entry != null) {
+                    batch.add(entry);
+                    queue.drainTo(batch, BATCH_SIZE - 1);
+                    write(batch);
+                    batch.clear();
+                }
+                if (System.currentTimeMillis() >= nextCleanup) {
+                    nextCleanup = System.currentTimeMillis() + CLEANUP_INTERVAL;
+                    cleanup();
+                }
+            } catch (InterruptedException ex) {
+                break;
+            } catch (IOException | RuntimeException ex) {
+                LOG.error("writing trace '{}' failed: {}", name, ex.toString());
+                batch.clear();
+            }
+        }
+    }
+
+    protected void write(@NotNull final List<TraceEntry> batch) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("can't create trace directory " + directory.getPath());
+        }
+        final StringBuilder content = new StringBuilder();
+        File file = null;
+        for (final TraceEntry entry : batch) {
+            final File entryFile = getFile(entry.getTimestamp());
+            if (file != null && !file.equals(entryFile)) {
+                append(file, content);
+                content.setLength(0);
+            }
+            file = entryFile;
+            final JsonWriter jsonWriter = new JsonWriter(new StringBuilderWriter(content));
+            entry.toJson(jsonWriter);
+            jsonWriter.flush();
+            content.append('\n');
+        }
+        if (file != null) {
+            append(file, content);
+        }
+    }
+
+    protected void append(@NotNull final File file, @NotNull final CharSequence content) throws IOException {
+        try (Writer fileWriter = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            fileWriter.append(content);
+        }
+    }
+
+    /**
+     * removes the files older than the max age and the oldest files if the size of all files exceeds the max size
+     */
+    protected void cleanup() {
+        final List<File> files = getFiles();
+        long size = 0;
+        for (int i = files.size(); --i >= 0; ) {
+            final File file = files.get(i);
+            size += file.length();
+            if ((maxAge > 0 && file.lastModified() < System.currentTimeMillis() - maxAge)
+                    || (maxSize > 0 && size > maxSize && i < files.size() - 1)) {
+                if (!file.delete()) {
+                    LOG.warn("can't remove trace file {}", file.getPath());
+                }
+            }
+        }
+    }
+
+    protected @NotNull File getFile(long timestamp) {
+        return new File(directory, name + "." + FILE_DATE.format(Instant.ofEpochMilli(timestamp)) + FILE_EXT);
+    }
+
+    /**
+     * @return the trace files of the service ('{name}.{yyyy-MM-dd}.jsonl' exactly, a service named 'default'
+     * doesn't use the files of a service named 'default.jobs'), the oldest first
+     */
+    protected @NotNull List<File> getFiles() {
+        final File[] files = directory.listFiles((dir, fileName) -> filePattern.matcher(fileName).matches());
+        final List<File> result = files != null ? new ArrayList<>(Arrays.asList(files)) : new ArrayList<>();
+        result.sort(Comparator.comparing(File::getName));
+        return result;
+    }
+}
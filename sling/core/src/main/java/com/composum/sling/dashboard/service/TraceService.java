@@ -5,7 +5,10 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.List;
 
 /** Can be used to log information that is to be shown with the trace widget in the dashboard. */
 public interface TraceService {
@@ -16,12 +19,44 @@ public interface TraceService {
 
     interface TraceEntry {
 
+        /**
+         * @return the monotonic sequence number of the entry in its trace service (starting with '1'),
+         * '0' if the entries are not numbered by the service (the polling cursor is not supported then)
+         */
+        default long getSequence() {
+            return 0L;
+        }
+
         @NotNull Date getTime();
 
+        /**
+         * @return the time of the entry (epoch milliseconds)
+         */
+        default long getTimestamp() {
+            return getTime().getTime();
+        }
+
         @NotNull Level getLevel();
 
+        /**
+         * @return the number of consecutive occurrences collapsed in this entry
+         */
+        default int getCount() {
+            return 1;
+        }
+
+        /**
+         * @return the time of the last occurrence (epoch milliseconds)
+         */
+        default long getLastTimestamp() {
+            return getTimestamp();
+        }
+
         @Nullable String getReference();
 
+        /**
+         * @return the message formatted with the entries arguments, formatted once on the first access
+         */
         @NotNull String getMessage();
 
         @Nullable <T> T getProperty(@NotNull String name, T defaultValue);
@@ -29,6 +64,15 @@ public interface TraceService {
         void toJson(@NotNull JsonWriter writer) throws IOException;
     }
 
+    /**
+     * Receives the entries of a trace service as they are traced; the listener is called by the tracing
+     * thread and must not block.
+     */
+    interface TraceListener {
+
+        void onEntry(@NotNull TraceService trace, @NotNull TraceEntry entry);
+    }
+
     @NotNull String getName();
 
     @NotNull String getLabel();
@@ -53,5 +97,53 @@ public interface TraceService {
      */
     @NotNull Iterable<TraceEntry> getEntries(@Nullable Level level);
 
+    /**
+     * Returns the buffered entries added after the entry with the given sequence number (the polling cursor).
+     *
+     * @param sequence the sequence number of the last entry known by the caller, '0' to get all entries
+     * @return the entries with a higher sequence number in the order of their sequence
+     */
+    default @NotNull Iterable<TraceEntry> getEntriesSince(long sequence) {
+        final List<TraceEntry> result = new ArrayList<>();
+        for (final TraceEntry entry : getEntries(null)) {
+            if (entry.getSequence() > sequence) {
+                result.add(entry);
+            }
+        }
+        result.sort(Comparator.comparingLong(TraceEntry::getSequence));
+        return result;
+    }
+
+    /**
+     * @return the sequence number of the newest buffered entry, '0' if the trace is empty; a polling cursor
+     * above this number is outdated (e.g. after a restart of the service)
+     */
+    default long getLastSequence() {
+        long last = 0L;
+        for (final TraceEntry entry : getEntries(null)) {
+            last = Math.max(last, entry.getSequence());
+        }
+        return last;
+    }
+
     int getNumber(@NotNull Level level);
+
+    /**
+     * @return the max number of entries buffered by the service, '0' if not known
+     */
+    default int getMaxEntries() {
+        return 0;
+    }
+
+    /**
+     * Registers a listener which is notified about each entry traced; not supported by default.
+     *
+     * @return 'true' if the listener is registered, 'false' if the service doesn't notify listeners
+     */
+    default boolean addListener(@NotNull TraceListener listener) {
+        return false;
+    }
+
+    default void removeListener(@NotNull TraceListener listener) {
+    }
 }
@@ -190,6 +190,18 @@ public abstract class AbstractDashboardServlet extends SlingSafeMethodsServlet {
         return defaultValue;
     }
 
+    protected long getLongParameter(@NotNull final SlingHttpServletRequest request,
+                                    @NotNull final String name, long defaultValue) {
+        final String value = request.getParameter(name);
+        if (StringUtils.isNotBlank(value))
+            try {
+                return Long.parseLong(value);
+            } catch (NumberFormatException ignore) {
+                LOG.trace("getLongParameter: value {} for {} {}", value, name, ignore.toString());
+            }
+        return defaultValue;
+    }
+
     protected boolean getBooleanParameter(@NotNull final SlingHttpServletRequest request,
                                           @NotNull final String name, boolean defaultValue) {
         final String value = request.getParameter(name);
@@ -84,6 +84,30 @@ public class DashboardExtractServlet extends SlingAllMethodsServlet {
                 "^cq:last(Modified|Replicat|Rolledout).*$"
         };
 
+        @AttributeDefinition(
+                name = "Scan Threads",
+                description = "the number of threads scanning the references in parallel; '1': sequential scan"
+        )
+        int scanThreads() default 1;
+
+        @AttributeDefinition(
+                name = "Commit Nodes",
+                description = "the number of copied resources after which the changes are committed; '0' (default): a single commit at the end"
+        )
+        int commitNodes() default 0;
+
+        @AttributeDefinition(
+                name = "Commit Bytes",
+                description = "the (estimated) size of the copied properties after which the changes are committed; '0' (default): a single commit at the end"
+        )
+        long commitBytes() default 0L;
+
+        @AttributeDefinition(
+                name = "Checkpoint Path",
+                description = "the repository path of the checkpoints of batch committed copies to resume an interrupted copy"
+        )
+        String checkpointPath() default "/var/composum/dashboard/extract";
+
         @AttributeDefinition(name = "Servlet Methods",
                 description = "the HTTP methods supported by this servlet")
         String[] sling_servlet_methods() default {
@@ -159,6 +183,26 @@ public class DashboardExtractServlet extends SlingAllMethodsServlet {
             public String[] ignoredProperties() {
                 return config.ignoredProperties();
             }
+
+            @Override
+            public int scanThreads() {
+                return config.scanThreads();
+            }
+
+            @Override
+            public int commitNodes() {
+                return config.commitNodes();
+            }
+
+            @Override
+            public long commitBytes() {
+                return config.commitBytes();
+            }
+
+            @Override
+            public String checkpointPath() {
+                return config.checkpointPath();
+            }
         };
     }
 
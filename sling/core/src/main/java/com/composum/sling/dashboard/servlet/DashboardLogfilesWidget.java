@@ -2,7 +2,13 @@ package com.composum.sling.dashboard.servlet;
 
 import com.composum.sling.dashboard.service.DashboardWidget;
 import com.composum.sling.dashboard.service.ContentGenerator;
+import com.composum.sling.dashboard.service.LogfileService;
+import com.composum.sling.dashboard.service.LogfileService.Histogram;
+import com.composum.sling.dashboard.service.LogfileService.Logfile;
 import com.composum.sling.dashboard.util.DashboardRequest;
+import com.composum.sling.dashboard.util.LogfileReader.LineHandler;
+import com.composum.sling.dashboard.util.LogfileTimestamp;
+import com.google.gson.stream.JsonWriter;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
@@ -23,6 +29,8 @@ import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.metatype.annotations.AttributeDefinition;
 import org.osgi.service.metatype.annotations.Designate;
 import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.servlet.Servlet;
 import javax.servlet.http.HttpServletResponse;
@@ -30,14 +38,25 @@ import javax.servlet.http.HttpSession;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.io.RandomAccessFile;
 import java.io.Serializable;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import static com.composum.sling.dashboard.servlet.DashboardServlet.DASHBOARD_CONTEXT;
 
@@ -80,7 +99,9 @@ public class DashboardLogfilesWidget extends AbstractWidgetServlet implements Co
         @AttributeDefinition(name = ConfigurationConstants.CFG_NAVIGATION_NAME)
         String navTitle();
 
-        @AttributeDefinition(name = "Logfiles")
+        @AttributeDefinition(name = "Logfiles",
+                description = "the logfile paths relative to the sling home; the file name can be a glob pattern, "
+                        + "e.g. '/logs/error.log*' (compressed '.gz' archives are supported)")
         String[] logFiles() default {
                 "/logs/error.log"
         };
@@ -94,6 +115,18 @@ public class DashboardLogfilesWidget extends AbstractWidgetServlet implements Co
         @AttributeDefinition(name = "Size Limit (Kb)")
         int sizeLimit() default 5000;
 
+        @AttributeDefinition(name = "Stream Max",
+                description = "the max number of concurrent live tail streams (server sent events); '0' disables streaming")
+        int streamMax() default 10;
+
+        @AttributeDefinition(name = "Stream Timeout",
+                description = "the lifetime (seconds) of one live tail stream connection, the browser reconnects after that")
+        int streamTimeout() default 300;
+
+        @AttributeDefinition(name = "Search Limit",
+                description = "the max number of hits delivered by one search request (one page of the search result)")
+        int searchLimit() default 1000;
+
         @AttributeDefinition(name = ConfigurationConstants.CFG_RESOURCE_TYPE_NAME,
                 description = ConfigurationConstants.CFG_RESOURCE_TYPE_DESCRIPTION)
         String[] sling_servlet_resourceTypes() default {
@@ -101,13 +134,18 @@ public class DashboardLogfilesWidget extends AbstractWidgetServlet implements Co
                 DEFAULT_RESOURCE_TYPE + "/page",
                 DEFAULT_RESOURCE_TYPE + "/view",
                 DEFAULT_RESOURCE_TYPE + "/tail",
+                DEFAULT_RESOURCE_TYPE + "/stream",
+                DEFAULT_RESOURCE_TYPE + "/search",
+                DEFAULT_RESOURCE_TYPE + "/histogram",
+                DEFAULT_RESOURCE_TYPE + "/download",
                 DEFAULT_RESOURCE_TYPE + "/tile"
         };
 
         @AttributeDefinition(name = ConfigurationConstants.CFG_SERVLET_EXTENSIONS_NAME,
                 description = ConfigurationConstants.CFG_SERVLET_EXTENSIONS_DESCRIPTION)
         String[] sling_servlet_extensions() default {
-                "html"
+                "html",
+                "json"
         };
 
         @AttributeDefinition(name = ConfigurationConstants.CFG_SERVLET_PATHS_NAME,
@@ -115,29 +153,22 @@ public class DashboardLogfilesWidget extends AbstractWidgetServlet implements Co
         String[] sling_servlet_paths();
     }
 
-    public class LoggerSession implements Serializable {
+    /**
+     * the logfile state of one HTTP session - the read position of the sessions view,
+     * the summary of the logfile is shared by all sessions via the logfile service
+     */
+    public static class LoggerSession implements Serializable {
 
         private final String logfile;
-        private final File file;
-        private final Pattern errorPattern;
-        private final Pattern warningPattern;
-        private final long sizeLimit;
 
-        private long lastSummaryPosition = 0;
-        private long lastDumpPosition = 0;
+        private int lastDumpGeneration = 0;
+        private long lastDumpPosition = Logfile.LIMITED_START;
 
-        private int lines = 0;
-        private int errors = 0;
-        private int warnings = 0;
+        private transient Logfile index;
 
-        public LoggerSession(@NotNull final String logfile, @NotNull final File file,
-                             @NotNull final Pattern errorPattern, @NotNull final Pattern warningPattern,
-                             int sizeLimit) {
+        public LoggerSession(@NotNull final String logfile, @NotNull final Logfile index) {
             this.logfile = logfile;
-            this.file = file;
-            this.errorPattern = errorPattern;
-            this.warningPattern = warningPattern;
-            this.sizeLimit = sizeLimit * 1000L;
+            this.index = index;
         }
 
         public @NotNull String getLogfile() {
@@ -145,72 +176,199 @@ public class DashboardLogfilesWidget extends AbstractWidgetServlet implements Co
         }
 
         public int getLines() {
-            return lines;
+            return index.getLines();
+        }
+
+        /**
+         * @see Logfile#getSize()
+         */
+        public long getSize() {
+            return index.getSize();
         }
 
         public int getErrors() {
-            return errors;
+            return index.getErrors();
         }
 
         public int getWarnings() {
-            return warnings;
+            return index.getWarnings();
+        }
+
+        public @NotNull Histogram getHistogram() {
+            return index.getHistogram();
         }
 
+        /**
+         * updates the summary of the logfile, a compressed archive is indexed in the background
+         */
         public void summarize() {
-            lastSummaryPosition = tail(null, lastSummaryPosition);
+            index.requestUpdate();
         }
 
-        public void dump(@NotNull final PrintWriter writer, boolean reset) {
-            lastDumpPosition = tail(writer, reset ? 0 : lastDumpPosition);
+        /**
+         * @see Logfile#search(long, Pattern, Long, Long, int, LineHandler)
+         */
+        public long search(long position, @NotNull final Pattern pattern, @Nullable final Long from,
+                           @Nullable final Long to, int limit, @NotNull final LineHandler handler)
+                throws IOException {
+            return index.search(position, pattern, from, to, limit, handler);
         }
 
-        public synchronized long tail(@Nullable final PrintWriter writer, long position) {
-            final long length = file.length();
-            if (position < length) {
-                try (final RandomAccessFile fileAccess = new RandomAccessFile(file, "r")) {
-                    long limitStart = position > 0 ? position : Math.max(length - sizeLimit, 0);
-                    while (limitStart > 0) {
-                        fileAccess.seek(--limitStart);
-                        if (fileAccess.readByte() == 0xA) {
-                            limitStart++;
-                            break;
-                        }
-                    }
-                    if (limitStart > position) {
-                        position = limitStart;
-                    }
-                    fileAccess.seek(position);
-                    String line;
-                    while ((line = fileAccess.readLine()) != null) {
-                        if (writer != null) {
-                            writer.println(line);
-                        } else {
-                            lines++;
-                            if (errorPattern.matcher(line).find()) {
-                                errors++;
-                            }
-                            if (warningPattern.matcher(line).find()) {
-                                warnings++;
+        /**
+         * writes the lines starting at the given position without changing the position of the sessions view
+         */
+        public void context(@NotNull final PrintWriter writer, long position, long maxBytes) {
+            try {
+                index.read(position, maxBytes, (line, linePosition) -> writer.println(line));
+            } catch (IOException ignore) {
+            }
+        }
+
+        public synchronized void dump(@NotNull final PrintWriter writer, boolean reset) {
+            try {
+                final LineHandler println = (line, position) -> writer.println(line);
+                final int generation = index.getGeneration();
+                final long position = reset ? Logfile.LIMITED_START
+                        : resume(lastDumpGeneration, lastDumpPosition, generation, println);
+                lastDumpPosition = index.read(position, println);
+                lastDumpGeneration = generation;
+            } catch (IOException ignore) {
+                lastDumpPosition = Logfile.LIMITED_START;
+            }
+        }
+
+        /**
+         * writes the lines of a time range, the range is located via the time index of the logfile
+         *
+         * @param from     the start of the range (epoch milliseconds), the size limit position if 'null'
+         * @param to       the end of the range (exclusive), the end of the file if 'null'
+         * @param maxBytes the max amount of content to write
+         * @param keep     if 'true' the view of the session continues at the end of the range
+         */
+        public synchronized void dump(@NotNull final PrintWriter writer, @Nullable final Long from,
+                                      @Nullable final Long to, long maxBytes, boolean keep) {
+            try {
+                final int generation = index.getGeneration();
+                final long start = from != null ? index.seek(from) : Logfile.LIMITED_START;
+                final long end = to != null ? index.seek(to) : Long.MAX_VALUE;
+                final long position = index.read(start, start >= 0 ? Math.min(maxBytes, end - start) : maxBytes,
+                        (line, linePosition) -> {
+                            if (linePosition < end) {
+                                writer.println(line);
                             }
-                        }
-                    }
-                    return fileAccess.getFilePointer();
-                } catch (IOException ignore) {
-                    return 0;
+                        });
+                if (keep) {
+                    lastDumpPosition = Math.min(position, end);
+                    lastDumpGeneration = generation;
                 }
+            } catch (IOException ignore) {
+            }
+        }
+
+        /**
+         * @return the position to continue reading in the current generation of the logfile; if the logfile
+         * was rotated since the given position was read the rest of the rotated file is delivered first
+         */
+        protected long resume(int generation, long position, int currentGeneration,
+                              @NotNull final LineHandler handler)
+                throws IOException {
+            if (generation != currentGeneration) {
+                if (position >= 0 && generation == currentGeneration - 1) {
+                    index.readRotated(position, handler);
+                }
+                return Logfile.LIMITED_START;
             }
             return position;
         }
+
+        /**
+         * sends the lines appended to the logfile as server sent events until the timeout is reached or the
+         * client has closed the connection; each event contains a limited amount of lines, a slow client is
+         * slowing down the stream itself (blocking writes) without buffering lines; the view of the session
+         * is continued at the position of the last event, the view lock is not held while waiting
+         *
+         * @param writer      the writer of the event stream response
+         * @param lastEventId the position to start from ('generation:position'), 'null' to continue the view
+         * @param timeout     the lifetime of the stream (milliseconds)
+         */
+        public void stream(@NotNull final PrintWriter writer, @Nullable final String lastEventId, long timeout)
+                throws IOException, InterruptedException {
+            int streamGeneration;
+            long streamPosition;
+            synchronized (this) {
+                streamGeneration = lastDumpGeneration;
+                streamPosition = lastDumpPosition;
+            }
+            if (StringUtils.isNotBlank(lastEventId)) {
+                try {
+                    final String[] id = StringUtils.split(lastEventId.trim(), ":", 2);
+                    streamGeneration = Integer.parseInt(id[0]);
+                    streamPosition = Long.parseLong(id[1]);
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException ignore) {
+                }
+            }
+            final LineHandler event = (line, linePosition) ->
+                    writer.append("data: ").append(StringUtils.remove(line, '\r')).append('\n');
+            final long until = System.currentTimeMillis() + timeout;
+            writer.append("retry: ").append(String.valueOf(STREAM_RETRY)).append("\n\n");
+            writer.flush();
+            long remaining;
+            while (!writer.checkError() && (remaining = until - System.currentTimeMillis()) > 0) {
+                if (index.awaitChange(streamGeneration, streamPosition, Math.min(remaining, STREAM_HEARTBEAT))) {
+                    final int generation = index.getGeneration();
+                    streamPosition = index.read(
+                            resume(streamGeneration, streamPosition, generation, event), STREAM_CHUNK_SIZE, event);
+                    streamGeneration = generation;
+                    writer.append("id: ").append(String.valueOf(streamGeneration))
+                            .append(':').append(String.valueOf(streamPosition)).append("\n\n");
+                    synchronized (this) {
+                        lastDumpGeneration = streamGeneration;
+                        lastDumpPosition = streamPosition;
+                    }
+                } else {
+                    writer.append(":\n\n"); // heartbeat to detect closed connections
+                }
+                writer.flush();
+            }
+        }
     }
 
     protected static final String OPTION_TAIL = "tail";
-    protected static final List<String> HTML_MODES = Arrays.asList(OPTION_PAGE, OPTION_VIEW, OPTION_TAIL, OPTION_TILE);
+    protected static final String OPTION_STREAM = "stream";
+    protected static final String OPTION_SEARCH = "search";
+    protected static final String OPTION_HISTOGRAM = "histogram";
+    protected static final String OPTION_DOWNLOAD = "download";
+    protected static final List<String> HTML_MODES = Arrays.asList(OPTION_PAGE, OPTION_VIEW, OPTION_TAIL, OPTION_STREAM,
+            OPTION_SEARCH, OPTION_HISTOGRAM, OPTION_DOWNLOAD, OPTION_TILE);
+
+    protected static final Pattern BYTE_RANGE = Pattern.compile("^bytes=(\\d*)-(\\d*)$");
+
+    /** the number of bars of the sparkline in the tile (15 minutes each for a day) */
+    public static final int SPARKLINE_BUCKETS = 96;
+
+    /** the default number of hits of a search page */
+    public static final int SEARCH_PAGE_SIZE = 100;
+    /** the amount of logfile bytes delivered as context of a position */
+    public static final long CONTEXT_SIZE = 16 * 1024L;
+
+    /** the reconnect delay of the browsers event source (milliseconds) */
+    public static final long STREAM_RETRY = 3000L;
+    /** the max idle time of a stream before a heartbeat comment is sent (milliseconds) */
+    public static final long STREAM_HEARTBEAT = 20000L;
+    /** the max amount of logfile bytes sent with one event */
+    public static final long STREAM_CHUNK_SIZE = 64 * 1024L;
 
     public static final String SA_SESSIONS = DashboardLogfilesWidget.class.getName() + "#sessions";
+    public static final String RA_LOGFILES = DashboardLogfilesWidget.class.getName() + "#logfiles";
+
+    private static final Logger LOG = LoggerFactory.getLogger(DashboardLogfilesWidget.class);
 
     @Reference
     protected SlingSettingsService slingSettingsService;
 
+    @Reference
+    protected LogfileService logfileService;
+
     @Reference
     protected XSSAPI xssapi;
 
@@ -221,6 +379,11 @@ public class DashboardLogfilesWidget extends AbstractWidgetServlet implements Co
     protected Pattern errorPattern;
     protected Pattern warningPattern;
     protected int sizeLimit;
+    protected int streamMax;
+    protected long streamTimeout;
+    protected int searchLimit;
+
+    protected final AtomicInteger streamCount = new AtomicInteger();
 
     @Activate
     @Modified
@@ -234,6 +397,9 @@ public class DashboardLogfilesWidget extends AbstractWidgetServlet implements Co
         errorPattern = Pattern.compile(config.errorPattern());
         warningPattern = Pattern.compile(config.warningPattern());
         sizeLimit = config.sizeLimit();
+        streamMax = config.streamMax();
+        streamTimeout = config.streamTimeout() * 1000L;
+        searchLimit = config.searchLimit();
     }
 
     @Override
@@ -261,21 +427,35 @@ public class DashboardLogfilesWidget extends AbstractWidgetServlet implements Co
     public void doGet(@NotNull final SlingHttpServletRequest slingRequest,
                       @NotNull final SlingHttpServletResponse response)
             throws IOException {
+        final String requestMode = getHtmlMode(slingRequest, HTML_MODES);
+        if (OPTION_STREAM.equals(requestMode)) {
+            // the stream is kept open for a long time, a service resolver is not needed for streaming
+            streamTail(slingRequest, response);
+            return;
+        }
+        if (OPTION_DOWNLOAD.equals(requestMode)) {
+            download(slingRequest, response);
+            return;
+        }
         try (DashboardRequest request = new DashboardRequest(slingRequest)) {
             final PrintWriter writer = response.getWriter();
             final String mode = getHtmlMode(request, HTML_MODES);
             final RequestPathInfo pathInfo = request.getRequestPathInfo();
             String logfile = pathInfo.getSuffix();
-            if (StringUtils.isNotBlank(logfile) && !logFiles.contains(logfile)) {
+            if (StringUtils.isNotBlank(logfile) && !getLogfiles(request).contains(logfile)) {
                 logfile = null;
             }
-            final LoggerSession session = !OPTION_TILE.equals(mode) && StringUtils.isNotBlank(logfile)
+            final LoggerSession session = !OPTION_TILE.equals(mode) && !OPTION_HISTOGRAM.equals(mode)
+                    && StringUtils.isNotBlank(logfile)
                     ? getLoggerSession(request, logfile, OPTION_PAGE.equals(mode) || resetTriggered(request))
                     : null;
             switch (mode) {
                 case OPTION_TILE:
                     htmlTile(request, response, writer);
                     return;
+                case OPTION_HISTOGRAM:
+                    jsonHistogram(request, response, logfile);
+                    return;
                 case OPTION_VIEW:
                 default:
                     htmlView(request, response, session, writer);
@@ -287,6 +467,12 @@ public class DashboardLogfilesWidget extends AbstractWidgetServlet implements Co
                         return;
                     }
                     break;
+                case OPTION_SEARCH:
+                    if (session != null) {
+                        jsonSearch(request, response, session);
+                        return;
+                    }
+                    break;
                 case OPTION_PAGE:
                     final ResourceResolver resolver = slingRequest.getResourceResolver();
                     prepareTextResponse(response, null);
@@ -303,6 +489,121 @@ public class DashboardLogfilesWidget extends AbstractWidgetServlet implements Co
         return StringUtils.defaultString(request.getHeader("Cache-Control"), "").contains("no");
     }
 
+    protected void streamTail(@NotNull final SlingHttpServletRequest request,
+                              @NotNull final SlingHttpServletResponse response)
+            throws IOException {
+        final String logfile = request.getRequestPathInfo().getSuffix();
+        final LoggerSession session = StringUtils.isNotBlank(logfile) && getLogfiles(request).contains(logfile)
+                ? getLoggerSession(request, logfile, false) : null;
+        if (session == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        if (streamCount.incrementAndGet() > streamMax) {
+            streamCount.decrementAndGet();
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+        try {
+            response.setHeader("Cache-Control", "no-cache");
+            response.setHeader("X-Accel-Buffering", "no");
+            response.setContentType("text/event-stream;charset=UTF-8");
+            session.stream(response.getWriter(), request.getHeader("Last-Event-ID"), streamTimeout);
+        } catch (InterruptedException ignore) {
+            Thread.currentThread().interrupt();
+        } finally {
+            streamCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * delivers the raw content of a logfile, a single byte range ('Range', 'If-Range') and
+     * conditional requests ('If-Modified-Since') are supported to resume or to repeat downloads
+     */
+    protected void download(@NotNull final SlingHttpServletRequest request,
+                            @NotNull final SlingHttpServletResponse response)
+            throws IOException {
+        final String logfile = request.getRequestPathInfo().getSuffix();
+        final File file = StringUtils.isNotBlank(logfile) && getLogfiles(request).contains(logfile) ? getFile(logfile) : null;
+        if (file == null || !file.isFile() || !file.canRead()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final long length = channel.size(); // the size at request time, the file can grow meanwhile
+            final long lastModified = file.lastModified() / 1000L * 1000L; // HTTP dates have a precision of seconds
+            final String etag = "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(length) + "\"";
+            response.setHeader("Accept-Ranges", "bytes");
+            response.setHeader("ETag", etag);
+            response.setDateHeader("Last-Modified", lastModified);
+            final long modifiedSince = getDateHeader(request, "If-Modified-Since");
+            if (modifiedSince >= 0 && lastModified <= modifiedSince) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+            long start = 0;
+            long end = length - 1;
+            final String range = request.getHeader("Range");
+            if (StringUtils.isNotBlank(range) && isRangeValid(request, etag, lastModified)) {
+                final Matcher matcher = BYTE_RANGE.matcher(range.trim());
+                if (matcher.matches() && (!matcher.group(1).isEmpty() || !matcher.group(2).isEmpty())
+                        && matcher.group(1).length() < 19 && matcher.group(2).length() < 19) {
+                    if (matcher.group(1).isEmpty()) {
+                        start = Math.max(length - Long.parseLong(matcher.group(2)), 0); // the last n bytes
+                    } else {
+                        start = Long.parseLong(matcher.group(1));
+                        if (!matcher.group(2).isEmpty()) {
+                            end = Math.min(Long.parseLong(matcher.group(2)), length - 1);
+                        }
+                    }
+                    if (start >= length || start > end) {
+                        response.setHeader("Content-Range", "bytes */" + length);
+                        response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                        return;
+                    }
+                    response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                    response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + length);
+                } // multiple ranges are not supported, the complete content is delivered in this case
+            }
+            response.setContentType(file.getName().endsWith(".gz") ? "application/gzip" : "text/plain");
+            response.setHeader("Content-Disposition", "attachment; filename=\"" + file.getName() + "\"");
+            response.setContentLengthLong(end - start + 1);
+            final WritableByteChannel output = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            while (position <= end) {
+                final long transferred = channel.transferTo(position, end - position + 1, output);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+            }
+            response.flushBuffer();
+        }
+    }
+
+    /**
+     * @return 'true' if no 'If-Range' condition is requested or if the condition matches the current content
+     */
+    protected boolean isRangeValid(@NotNull final SlingHttpServletRequest request,
+                                   @NotNull final String etag, long lastModified) {
+        final String ifRange = request.getHeader("If-Range");
+        if (StringUtils.isBlank(ifRange)) {
+            return true;
+        }
+        if (ifRange.trim().startsWith("\"")) {
+            return etag.equals(ifRange.trim());
+        }
+        return getDateHeader(request, "If-Range") == lastModified;
+    }
+
+    protected long getDateHeader(@NotNull final SlingHttpServletRequest request, @NotNull final String name) {
+        try {
+            return request.getDateHeader(name);
+        } catch (IllegalArgumentException ignore) {
+            return -1L;
+        }
+    }
+
     protected void htmlTile(@NotNull final SlingHttpServletRequest request,
                             @NotNull final SlingHttpServletResponse response,
                             @NotNull final PrintWriter writer)
@@ -315,12 +616,13 @@ public class DashboardLogfilesWidget extends AbstractWidgetServlet implements Co
                 .append(" text-white\">").append("Logfiles")
                 .append("</div><ul class=\"list-group list-group-flush\">\n");
         boolean reset = resetTriggered(request);
-        for (final String logfile : logFiles) {
+        for (final String logfile : getLogfiles(request)) {
             final LoggerSession session = getLoggerSession(request, logfile, reset);
             if (session != null) {
                 session.summarize();
                 writer.append("<li class=\"list-group-item d-flex justify-content-between\">")
                         .append(session.getLogfile()).append("<span>");
+                htmlSparkline(writer, session.getHistogram().aggregate(SPARKLINE_BUCKETS));
                 htmlBadges(writer, session);
                 writer.append("</span></li>");
             }
@@ -328,6 +630,39 @@ public class DashboardLogfilesWidget extends AbstractWidgetServlet implements Co
         writer.append("</ul></div>\n");
     }
 
+    /**
+     * renders the error and warning counts of the histogram as inline SVG lines
+     */
+    protected void htmlSparkline(@NotNull final PrintWriter writer, @NotNull final Histogram histogram) {
+        final int[] errors = histogram.getErrors();
+        final int[] warnings = histogram.getWarnings();
+        int max = 0;
+        for (int i = 0; i < errors.length; i++) {
+            max = Math.max(max, Math.max(errors[i], warnings[i]));
+        }
+        if (max > 0) {
+            writer.append("<svg class=\"dashboard-widget__sparkline\" viewBox=\"0 0 ").append(String.valueOf(errors.length))
+                    .append(" 16\" preserveAspectRatio=\"none\"><title>")
+                    .append(String.valueOf(histogram.getBucketSize() / 60000L)).append(" min: ")
+                    .append(LogfileTimestamp.format(histogram.getStart())).append(" - ")
+                    .append(LogfileTimestamp.format(histogram.getStart() + histogram.getBucketSize() * errors.length))
+                    .append("</title>");
+            htmlSparklinePath(writer, "warnings", warnings, max);
+            htmlSparklinePath(writer, "errors", errors, max);
+            writer.append("</svg>");
+        }
+    }
+
+    protected void htmlSparklinePath(@NotNull final PrintWriter writer, @NotNull final String type,
+                                     @NotNull final int[] values, int max) {
+        writer.append("<polyline class=\"").append(type).append("\" points=\"");
+        for (int i = 0; i < values.length; i++) {
+            writer.append(i > 0 ? " " : "").append(String.valueOf(i)).append(',')
+                    .append(String.valueOf(16 - values[i] * 15 / max));
+        }
+        writer.append("\"/>");
+    }
+
     protected void htmlBadges(@NotNull final PrintWriter writer, @NotNull final LoggerSession session) {
         writer.append("<span class=\"dashboard-widget__badges\">");
         htmlBadge(writer, "danger", session.getErrors());
@@ -350,6 +685,7 @@ public class DashboardLogfilesWidget extends AbstractWidgetServlet implements Co
         writer.append("<style>\n");
         copyResource(this.getClass(), "/com/composum/sling/dashboard/plugin/logfile/style.css", writer);
         writer.append("</style>\n");
+        final List<String> logFiles = getLogfiles(request);
         if (session != null) {
             session.summarize();
             logfileView(request, response, session, writer);
@@ -404,20 +740,190 @@ public class DashboardLogfilesWidget extends AbstractWidgetServlet implements Co
                 .replace('.', '_');
     }
 
+    /**
+     * the view of the logfile content, starting at the size limit position or - if requested - at the
+     * 'from' time; a view which is closed by a 'to' time is not extended by the lines appended to the file
+     */
     protected void logfileView(@NotNull final SlingHttpServletRequest request,
                                @NotNull final SlingHttpServletResponse response,
                                @NotNull LoggerSession session, @NotNull final PrintWriter writer) {
-        writer.append("<div class=\"dashboard-widget__logfile\"><textarea readonly=\"readonly\" data-tail=\"")
-                .append(getWidgetUri(request, DEFAULT_RESOURCE_TYPE, HTML_MODES, OPTION_TAIL))
-                .append(session.getLogfile()).append("\">");
-        session.dump(writer, true);
+        final Long from = LogfileTimestamp.parseValue(request.getParameter("from"));
+        final Long to = LogfileTimestamp.parseValue(request.getParameter("to"));
+        writer.append("<div class=\"dashboard-widget__logfile\"><textarea readonly=\"readonly\"");
+        if (to == null) {
+            writer.append(" data-tail=\"")
+                    .append(getWidgetUri(request, DEFAULT_RESOURCE_TYPE, HTML_MODES, OPTION_TAIL))
+                    .append(session.getLogfile()).append("\"");
+            if (streamMax > 0) {
+                writer.append(" data-stream=\"")
+                        .append(getWidgetUri(request, DEFAULT_RESOURCE_TYPE, HTML_MODES, OPTION_STREAM))
+                        .append(session.getLogfile()).append("\"");
+            }
+        }
+        writer.append(">");
+        if (from != null || to != null) {
+            session.dump(writer, from, to, sizeLimit * 1000L, true);
+        } else {
+            session.dump(writer, true);
+        }
         writer.append("</textarea></div>\n");
     }
 
+    /**
+     * the lines appended since the last tail request of the session or - if a 'position'
+     * is requested (e.g. the position of a search hit) - the lines starting at this position
+     * or the lines of a requested time range ('from', 'to')
+     */
     protected void htmlTail(@NotNull final SlingHttpServletRequest request,
                             @NotNull final SlingHttpServletResponse response,
                             @NotNull final LoggerSession session, @NotNull final PrintWriter writer) {
-        session.dump(writer, false);
+        final long position = getLongParameter(request, "position", -1L);
+        final Long from = LogfileTimestamp.parseValue(request.getParameter("from"));
+        final Long to = LogfileTimestamp.parseValue(request.getParameter("to"));
+        if (position >= 0) {
+            session.context(writer, position, CONTEXT_SIZE);
+        } else if (from != null || to != null) {
+            session.dump(writer, from, to, sizeLimit * 1000L, false);
+        } else {
+            session.dump(writer, false);
+        }
+    }
+
+    /**
+     * the error and warning counts per minute of the last day of one (the suffix) or all logfiles as JSON:
+     * {"logfiles":[{"logfile":..,"start":..,"bucketSize":..,"errors":[..],"warnings":[..]},..]}
+     */
+    protected void jsonHistogram(@NotNull final SlingHttpServletRequest request,
+                                 @NotNull final SlingHttpServletResponse response, @Nullable final String logfile)
+            throws IOException {
+        prepareTextResponse(response, "application/json");
+        final JsonWriter writer = new JsonWriter(response.getWriter());
+        writer.beginObject();
+        writer.name("logfiles").beginArray();
+        for (final String path : StringUtils.isNotBlank(logfile) ? List.of(logfile) : getLogfiles(request)) {
+            final LoggerSession session = getLoggerSession(request, path, false);
+            if (session != null) {
+                session.summarize();
+                final Histogram histogram = session.getHistogram();
+                writer.beginObject();
+                writer.name("logfile").value(session.getLogfile());
+                writer.name("start").value(histogram.getStart());
+                writer.name("bucketSize").value(histogram.getBucketSize());
+                writer.name("errors").beginArray();
+                for (final int count : histogram.getErrors()) {
+                    writer.value(count);
+                }
+                writer.endArray();
+                writer.name("warnings").beginArray();
+                for (final int count : histogram.getWarnings()) {
+                    writer.value(count);
+                }
+                writer.endArray();
+                writer.endObject();
+            }
+        }
+        writer.endArray();
+        writer.endObject();
+        writer.flush();
+    }
+
+    /**
+     * the search hits of one page as JSON:
+     * {"logfile":..,"hits":[{"position":..,"line":..},..],"next":..,"complete":..}; the 'next' position
+     * is the 'position' parameter of the request for the next page of the search result
+     */
+    protected void jsonSearch(@NotNull final SlingHttpServletRequest request,
+                              @NotNull final SlingHttpServletResponse response,
+                              @NotNull final LoggerSession session)
+            throws IOException {
+        final Pattern pattern;
+        try {
+            pattern = Pattern.compile(StringUtils.defaultString(request.getParameter("pattern")));
+        } catch (PatternSyntaxException ex) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, ex.getDescription());
+            return;
+        }
+        final Long from = LogfileTimestamp.parseValue(request.getParameter("from"));
+        final Long to = LogfileTimestamp.parseValue(request.getParameter("to"));
+        final long position = Math.max(getLongParameter(request, "position", 0L), 0L);
+        final int limit = Math.min(Math.max(getIntParameter(request, "limit", SEARCH_PAGE_SIZE), 1), searchLimit);
+        prepareTextResponse(response, "application/json");
+        final JsonWriter writer = new JsonWriter(response.getWriter());
+        writer.beginObject();
+        writer.name("logfile").value(session.getLogfile());
+        writer.name("pattern").value(pattern.pattern());
+        if (from != null) {
+            writer.name("from").value(LogfileTimestamp.format(from));
+        }
+        if (to != null) {
+            writer.name("to").value(LogfileTimestamp.format(to));
+        }
+        writer.name("position").value(position);
+        writer.name("hits").beginArray();
+        final long end = session.getSize(); // the search is covering at least the current content
+        final long next = session.search(position, pattern, from, to, limit, (line, linePosition) -> {
+            writer.beginObject();
+            writer.name("position").value(linePosition);
+            writer.name("line").value(line);
+            writer.endObject();
+        });
+        writer.endArray();
+        writer.name("next").value(next);
+        writer.name("complete").value(next >= end);
+        writer.endObject();
+        writer.flush();
+    }
+
+    /**
+     * @return the configured logfiles, resolved once per request
+     */
+    protected @NotNull List<String> getLogfiles(@NotNull final SlingHttpServletRequest request) {
+        List<String> logfiles = null;
+        try {
+            //noinspection unchecked
+            logfiles = (List<String>) request.getAttribute(RA_LOGFILES);
+        } catch (ClassCastException ignore) {
+        }
+        if (logfiles == null) {
+            request.setAttribute(RA_LOGFILES, logfiles = getLogfiles());
+        }
+        return logfiles;
+    }
+
+    /**
+     * @return the configured logfiles, glob patterns in the file names are expanded to the matching files
+     */
+    protected @NotNull List<String> getLogfiles() {
+        final List<String> result = new ArrayList<>();
+        for (final String logfile : logFiles) {
+            if (StringUtils.containsAny(StringUtils.substringAfterLast(logfile, "/"), "*?[{")) {
+                final String folder = StringUtils.substringBeforeLast(logfile, "/");
+                final List<String> matches = new ArrayList<>();
+                try (final DirectoryStream<Path> files = Files.newDirectoryStream(getFile(folder).toPath(),
+                        StringUtils.substringAfterLast(logfile, "/"))) {
+                    for (final Path file : files) {
+                        if (Files.isRegularFile(file)) {
+                            matches.add(folder + "/" + file.getFileName());
+                        }
+                    }
+                } catch (IOException | IllegalArgumentException ex) {
+                    LOG.error("getLogfiles({}): {}", logfile, ex.toString());
+                }
+                Collections.sort(matches);
+                for (final String match : matches) {
+                    if (!result.contains(match)) {
+                        result.add(match);
+                    }
+                }
+            } else if (!result.contains(logfile)) {
+                result.add(logfile);
+            }
+        }
+        return result;
+    }
+
+    protected @NotNull File getFile(@NotNull final String path) {
+        return new File("./" + slingHomeName + path);
     }
 
     protected @Nullable LoggerSession getLoggerSession(@NotNull final SlingHttpServletRequest request,
@@ -441,12 +947,17 @@ public class DashboardLogfilesWidget extends AbstractWidgetServlet implements Co
                     httpSession.setAttribute(SA_SESSIONS, sessionSet = new HashMap<>());
                 }
             }
-            if (loggerSession == null) {
-                final File file = new File("./" + slingHomeName + path);
-                if (file.isFile() && file.canRead()) {
-                    loggerSession = new LoggerSession(path, file, errorPattern, warningPattern, sizeLimit);
+            final Logfile index = logfileService.getLogfile(getFile(path),
+                    errorPattern, warningPattern, sizeLimit * 1000L);
+            if (index != null) {
+                if (loggerSession == null) {
+                    loggerSession = new LoggerSession(path, index);
                     sessionSet.put(path, loggerSession);
+                } else {
+                    loggerSession.index = index;
                 }
+            } else {
+                loggerSession = null;
             }
         }
         return loggerSession;
@@ -7,6 +7,8 @@ import com.composum.sling.dashboard.service.TraceService;
 import com.composum.sling.dashboard.service.TraceService.Level;
 import com.composum.sling.dashboard.util.DashboardRequest;
 import com.google.gson.stream.JsonWriter;
+import org.apache.commons.io.output.StringBuilderWriter;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
 import org.apache.sling.api.request.RequestPathInfo;
@@ -29,9 +31,14 @@ import javax.servlet.Servlet;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.composum.sling.dashboard.servlet.DashboardServlet.DASHBOARD_CONTEXT;
 
@@ -74,13 +81,22 @@ public class DashboardTraceWidget extends AbstractWidgetServlet implements Conte
         @AttributeDefinition(name = ConfigurationConstants.CFG_NAVIGATION_NAME)
         String navTitle();
 
+        @AttributeDefinition(name = "Stream Max",
+                description = "the max number of concurrent live trace streams (server sent events); '0' disables streaming")
+        int streamMax() default 10;
+
+        @AttributeDefinition(name = "Stream Timeout",
+                description = "the lifetime (seconds) of one live trace stream connection, the browser reconnects after that")
+        int streamTimeout() default 300;
+
         @AttributeDefinition(name = ConfigurationConstants.CFG_RESOURCE_TYPE_NAME,
                 description = ConfigurationConstants.CFG_RESOURCE_TYPE_DESCRIPTION)
         String[] sling_servlet_resourceTypes() default {
                 DEFAULT_RESOURCE_TYPE,
                 DEFAULT_RESOURCE_TYPE + "/page",
                 DEFAULT_RESOURCE_TYPE + "/view",
-                DEFAULT_RESOURCE_TYPE + "/tile"
+                DEFAULT_RESOURCE_TYPE + "/tile",
+                DEFAULT_RESOURCE_TYPE + "/stream"
         };
 
         @AttributeDefinition(name = ConfigurationConstants.CFG_SERVLET_EXTENSIONS_NAME,
@@ -103,18 +119,39 @@ public class DashboardTraceWidget extends AbstractWidgetServlet implements Conte
         put(Level.DEBUG, "secondary");
     }};
 
+    protected static final DateTimeFormatter TRACE_TIME =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    protected static final String OPTION_STREAM = "stream";
+
+    protected static final List<String> TRACE_MODES = Arrays.asList(OPTION_PAGE, OPTION_VIEW, OPTION_TILE, OPTION_STREAM);
+
+    /** the reconnect delay of the browser if a stream is closed (milliseconds) */
+    public static final long STREAM_RETRY = 3000L;
+    /** the max idle time of a stream before a heartbeat comment is sent (milliseconds) */
+    public static final long STREAM_HEARTBEAT = 20000L;
+    /** the max number of entries buffered for one stream */
+    public static final int STREAM_QUEUE_SIZE = 1000;
+
     @Reference
     protected TraceManager traceManager;
 
     @Reference
     protected XSSAPI xssapi;
 
+    protected int streamMax;
+    protected long streamTimeout;
+
+    protected final AtomicInteger streamCount = new AtomicInteger();
+
     @Activate
     @Modified
     protected void activate(final BundleContext bundleContext, final Config config) {
         super.activate(bundleContext,
                 config.name(), config.context(), config.category(), config.rank(), config.label(),
                 config.navTitle(), config.sling_servlet_resourceTypes(), config.sling_servlet_paths());
+        streamMax = config.streamMax();
+        streamTimeout = config.streamTimeout() * 1000L;
     }
 
     @Override
@@ -124,7 +161,13 @@ public class DashboardTraceWidget extends AbstractWidgetServlet implements Conte
 
     @Override
     public void embedScripts(@NotNull final ResourceResolver resolver,
-                             @NotNull final PrintWriter writer, @NotNull final String mode) {
+                             @NotNull final PrintWriter writer, @NotNull final String mode)
+            throws IOException {
+        if (OPTION_PAGE.equals(mode) || OPTION_VIEW.equals(mode)) {
+            writer.append("<script>\n");
+            copyResource(this.getClass(), "/com/composum/sling/dashboard/plugin/trace/script.js", writer);
+            writer.append("</script>\n");
+        }
     }
 
     /*
@@ -145,13 +188,22 @@ public class DashboardTraceWidget extends AbstractWidgetServlet implements Conte
     public void doGet(@NotNull final SlingHttpServletRequest slingRequest,
                       @NotNull final SlingHttpServletResponse response)
             throws IOException {
+        if (OPTION_STREAM.equals(getHtmlMode(slingRequest, TRACE_MODES))) {
+            // the stream is kept open for a long time, a service resolver is not needed for streaming
+            streamTrace(slingRequest, response);
+            return;
+        }
         try (DashboardRequest request = new DashboardRequest(slingRequest)) {
             //simulateTrace();
             final PrintWriter writer = response.getWriter();
             final String mode = getHtmlMode(request, HTML_MODES);
             final RequestPathInfo pathInfo = request.getRequestPathInfo();
             if ("json".equals(pathInfo.getExtension())) {
-
+                final TraceService trace = traceManager.getTrace(request.getParameter("trace"));
+                if (trace != null) {
+                    jsonEntries(request, response, trace);
+                    return;
+                }
             } else {
                 switch (mode) {
                     case OPTION_TILE:
@@ -174,6 +226,38 @@ public class DashboardTraceWidget extends AbstractWidgetServlet implements Conte
         }
     }
 
+    /**
+     * the incremental polling of a trace: 'trace.json?trace={name}&since={sequence}' returns the entries added
+     * after the given sequence and the sequence to use as cursor for the next request; a cursor beyond the
+     * buffered entries (e.g. after a restart of the service) is reset and all entries are returned
+     */
+    protected void jsonEntries(@NotNull final SlingHttpServletRequest request,
+                               @NotNull final SlingHttpServletResponse response, @NotNull final TraceService trace)
+            throws IOException {
+        long sequence = Math.max(getLongParameter(request, "since", 0L), 0L);
+        boolean reset = false;
+        if (sequence > trace.getLastSequence()) {
+            reset = true;
+            sequence = 0;
+        }
+        prepareTextResponse(response, "application/json");
+        final JsonWriter writer = new JsonWriter(response.getWriter());
+        writer.beginObject();
+        writer.name("trace").value(trace.getName());
+        if (reset) {
+            writer.name("reset").value(true);
+        }
+        writer.name("entries").beginArray();
+        for (final TraceService.TraceEntry entry : trace.getEntriesSince(sequence)) {
+            entry.toJson(writer);
+            sequence = entry.getSequence();
+        }
+        writer.endArray();
+        writer.name("sequence").value(sequence);
+        writer.endObject();
+        writer.flush();
+    }
+
     protected void htmlTile(@NotNull final SlingHttpServletRequest request,
                             @NotNull final SlingHttpServletResponse response,
                             @NotNull final PrintWriter writer)
@@ -258,38 +342,149 @@ public class DashboardTraceWidget extends AbstractWidgetServlet implements Conte
             writer.append("</div>\n");
         }
         writer.append("</div>\n");
-        writer.append("<script>\n");
-        copyResource(this.getClass(), "/com/composum/sling/dashboard/plugin/trace/script.js", writer);
-        writer.append("</script>\n");
     }
 
     protected void traceView(@NotNull final SlingHttpServletRequest request,
                              @NotNull final SlingHttpServletResponse response,
                              @NotNull final TraceService trace, @NotNull final PrintWriter writer)
             throws IOException {
-        writer.append("<div class=\"dashboard-widget__trace\">");
-        int index = 0;
+        long sequence = 0;
+        final StringBuilder entries = new StringBuilder();
+        final PrintWriter entriesWriter = new PrintWriter(new StringBuilderWriter(entries));
         for (final TraceService.TraceEntry entry : trace.getEntries(null)) {
-            final Level level = entry.getLevel();
-            final String domId = "entry-" + index;
-            writer.append("<div class=\"card\"><div class=\"card-header\" id=\"card-")
-                    .append(domId).append("\">")
-                    .append("<button class=\"btn btn-link d-flex\" data-toggle=\"collapse\" data-target=\"#pane-")
-                    .append(domId).append("\" aria-controls=\"pane-").append(domId).append("\" aria-expanded=\"false\">");
-            writer.append("<span class=\"trace-time\">").append(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(entry.getTime())).append("</span>");
-            writer.append("<span class=\"trace-level badge badge-pill badge-").append(LEVEL_TO_BADGE.get(level)).append("\">")
-                    .append(xssapi.encodeForHTMLAttr(entry.getProperty("levelHint", level.name()))).append("</span>");
-            writer.append("<span class=\"trace-msg\">").append(xssapi.encodeForHTML(entry.getMessage())).append("</span>");
-            writer.append("</button></div><div class=\"card-body\">\n");
-            writer.append("<div id=\"pane-").append(domId).append("\" class=\"collapse\" aria-labelledby=\"card-").append(domId).append("\">\n");
-            writer.append("<textarea readonly=\"readonly\">");
-            final JsonWriter jsonWriter = new JsonWriter(writer);
-            jsonWriter.setIndent("  ");
-            entry.toJson(jsonWriter);
-            jsonWriter.flush();
-            writer.append("</textarea></div></div></div>\n");
-            index++;
+            htmlEntry(trace, entry, entriesWriter);
+            sequence = entry.getSequence();
         }
+        entriesWriter.flush();
+        writer.append("<div class=\"dashboard-widget__trace\"");
+        if (streamMax > 0) {
+            writer.append(" data-stream=\"")
+                    .append(getWidgetUri(request, DEFAULT_RESOURCE_TYPE, TRACE_MODES, OPTION_STREAM))
+                    .append("?trace=").append(xssapi.encodeForHTMLAttr(trace.getName()))
+                    .append("&amp;since=").append(String.valueOf(sequence)).append("\"");
+            writer.append(" data-max=\"").append(String.valueOf(
+                    trace.getMaxEntries() > 0 ? trace.getMaxEntries() : STREAM_QUEUE_SIZE)).append("\"");
+        }
+        writer.append(">").append(entries);
         writer.append("</div>\n");
     }
+
+    protected void htmlEntry(@NotNull final TraceService trace, @NotNull final TraceService.TraceEntry entry,
+                             @NotNull final PrintWriter writer)
+            throws IOException {
+        final Level level = entry.getLevel();
+        final String domId = "entry-" + xssapi.encodeForHTMLAttr(trace.getName()) + "-" + entry.getSequence();
+        writer.append("<div class=\"card\"><div class=\"card-header\" id=\"card-")
+                .append(domId).append("\">")
+                .append("<button class=\"btn btn-link d-flex\" data-toggle=\"collapse\" data-target=\"#pane-")
+                .append(domId).append("\" aria-controls=\"pane-").append(domId).append("\" aria-expanded=\"false\">");
+        writer.append("<span class=\"trace-time\">").append(TRACE_TIME.format(Instant.ofEpochMilli(entry.getTimestamp()))).append("</span>");
+        writer.append("<span class=\"trace-level badge badge-pill badge-").append(LEVEL_TO_BADGE.get(level)).append("\">")
+                .append(xssapi.encodeForHTMLAttr(entry.getProperty("levelHint", level.name()))).append("</span>");
+        writer.append("<span class=\"trace-msg\">").append(xssapi.encodeForHTML(entry.getMessage())).append("</span>");
+        if (entry.getCount() > 1) {
+            writer.append("<span class=\"trace-count badge badge-pill badge-light\" title=\"last: ")
+                    .append(TRACE_TIME.format(Instant.ofEpochMilli(entry.getLastTimestamp()))).append("\">&times;")
+                    .append(String.valueOf(entry.getCount())).append("</span>");
+        }
+        writer.append("</button></div><div class=\"card-body\">\n");
+        writer.append("<div id=\"pane-").append(domId).append("\" class=\"collapse\" aria-labelledby=\"card-").append(domId).append("\">\n");
+        writer.append("<textarea readonly=\"readonly\">");
+        final JsonWriter jsonWriter = new JsonWriter(writer);
+        jsonWriter.setIndent("  ");
+        entry.toJson(jsonWriter);
+        jsonWriter.flush();
+        writer.append("</textarea></div></div></div>\n");
+    }
+
+    /**
+     * sends the entries traced as server sent events (the HTML of the entry cards) until the timeout is reached
+     * or the client has closed the connection; the entries are buffered in a bounded queue per stream,
+     * if the client is too slow the oldest entries are dropped and a 'dropped' event reports the number of
+     * the dropped entries; a cursor of the client beyond the buffered entries is reported by a 'reset' event
+     */
+    protected void streamTrace(@NotNull final SlingHttpServletRequest request,
+                               @NotNull final SlingHttpServletResponse response)
+            throws IOException {
+        final TraceService trace = traceManager.getTrace(request.getParameter("trace"));
+        if (trace == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        if (streamCount.incrementAndGet() > streamMax) {
+            streamCount.decrementAndGet();
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+        final TraceManager.Subscription subscription = traceManager.subscribe(trace.getName(), STREAM_QUEUE_SIZE);
+        if (subscription == null) {
+            // the service doesn't notify listeners, the entries can be polled only
+            streamCount.decrementAndGet();
+            response.sendError(HttpServletResponse.SC_NOT_IMPLEMENTED);
+            return;
+        }
+        try {
+            long sequence = getLongParameter(request, "since", 0L);
+            final String lastEventId = request.getHeader("Last-Event-ID");
+            if (StringUtils.isNotBlank(lastEventId)) {
+                try {
+                    sequence = Long.parseLong(lastEventId.trim());
+                } catch (NumberFormatException ignore) {
+                }
+            }
+            response.setHeader("Cache-Control", "no-cache");
+            response.setHeader("X-Accel-Buffering", "no");
+            response.setContentType("text/event-stream;charset=UTF-8");
+            final PrintWriter writer = response.getWriter();
+            writer.append("retry: ").append(String.valueOf(STREAM_RETRY)).append("\n\n");
+            if (sequence > trace.getLastSequence()) {
+                // the cursor is outdated (e.g. after a restart of the service), the client has to drop its entries
+                writer.append("event: reset\ndata: ").append(String.valueOf(sequence)).append("\n\n");
+                sequence = 0;
+            }
+            // the entries traced since the cursor of the client, the subscription is already buffering the new ones
+            for (final TraceService.TraceEntry entry : trace.getEntriesSince(sequence)) {
+                sequence = streamEntry(trace, entry, writer);
+            }
+            writer.flush();
+            long dropped = 0;
+            final long until = System.currentTimeMillis() + streamTimeout;
+            long remaining;
+            while (!writer.checkError() && (remaining = until - System.currentTimeMillis()) > 0) {
+                final TraceService.TraceEntry entry = subscription.poll(Math.min(remaining, STREAM_HEARTBEAT));
+                if (entry != null) {
+                    if (entry.getSequence() > sequence) {
+                        sequence = streamEntry(trace, entry, writer);
+                    }
+                } else {
+                    writer.append(":\n\n"); // heartbeat to detect closed connections
+                }
+                if (subscription.getDropped() > dropped) {
+                    dropped = subscription.getDropped();
+                    writer.append("event: dropped\ndata: ").append(String.valueOf(dropped)).append("\n\n");
+                }
+                writer.flush();
+            }
+        } catch (InterruptedException ignore) {
+            Thread.currentThread().interrupt();
+        } finally {
+            subscription.close();
+            streamCount.decrementAndGet();
+        }
+    }
+
+    protected long streamEntry(@NotNull final TraceService trace, @NotNull final TraceService.TraceEntry entry,
+                               @NotNull final PrintWriter writer)
+            throws IOException {
+        final StringBuilder html = new StringBuilder();
+        try (PrintWriter htmlWriter = new PrintWriter(new StringBuilderWriter(html))) {
+            htmlEntry(trace, entry, htmlWriter);
+        }
+        for (final String line : StringUtils.chomp(html.toString()).split("\n", -1)) {
+            writer.append("data: ").append(StringUtils.remove(line, '\r')).append('\n');
+        }
+        writer.append("id: ").append(String.valueOf(entry.getSequence())).append("\n\n");
+        return entry.getSequence();
+    }
+
 }
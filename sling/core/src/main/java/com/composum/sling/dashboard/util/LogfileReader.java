@@ -0,0 +1,191 @@
+package com.composum.sling.dashboard.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * a buffered line reader for (huge) logfiles based on a file channel and a reusable direct buffer;
+ * the file content is read in chunks and split into UTF-8 lines instead of the byte per byte system calls
+ * of the 'RandomAccessFile.readLine()' implementation
+ */
+public class LogfileReader {
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /** the size of the windows read to scan backwards for a line start */
+    public static final int SCAN_WINDOW_SIZE = 64 * 1024;
+
+    /** lines longer than this are truncated (the rest of the line is skipped) */
+    public static final int MAX_LINE_LENGTH = 1024 * 1024;
+
+    @FunctionalInterface
+    public interface LineHandler {
+
+        /**
+         * @param line     the line text without the line termination
+         * @param position the file position of the lines first byte
+         */
+        void handleLine(@NotNull String line, long position) throws IOException;
+    }
+
+    /** the scan window buffer of each thread, a mapped window would block a rename or delete on Windows */
+    private static final ThreadLocal<ByteBuffer> SCAN_WINDOW =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocate(SCAN_WINDOW_SIZE));
+
+    protected final ByteBuffer buffer;
+
+    private byte[] lineBytes = new byte[256];
+    private int lineLength;
+
+    public LogfileReader() {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    public LogfileReader(int bufferSize) {
+        buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    /**
+     * reads all complete lines starting at the given position up to the current end of the file;
+     * an incomplete last line (not terminated by a line feed) is not consumed
+     *
+     * @param channel  the channel of the file to read
+     * @param position the position of the first line to read (the start of a line)
+     * @param handler  the consumer of the lines read
+     * @return the position after the last complete line read
+     */
+    public long read(@NotNull final FileChannel channel, long position, @NotNull final LineHandler handler)
+            throws IOException {
+        return read(channel, position, Long.MAX_VALUE, handler);
+    }
+
+    /**
+     * reads the complete lines starting at the given position until the given amount of bytes is consumed
+     * (the chunk which exceeds the amount is read completely) or the end of the file is reached
+     *
+     * @param channel  the channel of the file to read
+     * @param position the position of the first line to read (the start of a line)
+     * @param maxBytes the amount of bytes after which the reading should stop
+     * @param handler  the consumer of the lines read
+     * @return the position after the last complete line read
+     */
+    public long read(@NotNull final FileChannel channel, long position, long maxBytes,
+                     @NotNull final LineHandler handler)
+            throws IOException {
+        channel.position(position);
+        return read((ReadableByteChannel) channel, position, maxBytes, handler);
+    }
+
+    /**
+     * reads the complete lines of a sequential channel (e.g. of a decompressed stream) until the given amount
+     * of bytes is consumed or the end of the stream is reached
+     *
+     * @param channel  the channel positioned at the start of the first line to read
+     * @param position the position of the channels next byte (used to report the line positions)
+     * @param maxBytes the amount of bytes after which the reading should stop
+     * @param handler  the consumer of the lines read
+     * @return the position after the last complete line read
+     */
+    public long read(@NotNull final ReadableByteChannel channel, long position, long maxBytes,
+                     @NotNull final LineHandler handler)
+            throws IOException {
+        final long start = position;
+        long lineStart = position;
+        lineLength = 0;
+        int count;
+        buffer.clear();
+        while (lineStart - start < maxBytes && (count = channel.read(buffer)) > 0) {
+            buffer.flip();
+            int segmentStart = 0;
+            for (int i = 0; i < count; i++) {
+                if (buffer.get(i) == '\n') {
+                    appendLineBytes(segmentStart, i);
+                    handler.handleLine(lineString(), lineStart);
+                    lineStart = position + i + 1;
+                    segmentStart = i + 1;
+                    lineLength = 0;
+                }
+            }
+            appendLineBytes(segmentStart, count);
+            position += count;
+            buffer.clear();
+        }
+        return lineStart;
+    }
+
+    /**
+     * determines the start of the line which contains the given position by a backwards scan for the previous
+     * line feed through windows of the file read into a reused buffer, the windows are scanned word by word
+     * (8 bytes)
+     *
+     * @param channel  the channel of the file to scan
+     * @param position the position inside of the line of interest
+     * @return the position after the nearest line feed before the given position, '0' if no line feed found
+     */
+    public static long findLineStart(@NotNull final FileChannel channel, long position) throws IOException {
+        long windowEnd = Math.min(position, channel.size());
+        while (windowEnd > 0) {
+            final long windowStart = Math.max(windowEnd - SCAN_WINDOW_SIZE, 0);
+            final ByteBuffer window = SCAN_WINDOW.get();
+            window.clear().limit((int) (windowEnd - windowStart));
+            while (window.hasRemaining() && channel.read(window, windowStart + window.position()) > 0) {
+                // a positional read can return less than requested
+            }
+            final int index = lastIndexOfLineFeed(window, window.position());
+            if (index >= 0) {
+                return windowStart + index + 1;
+            }
+            windowEnd = windowStart;
+        }
+        return 0;
+    }
+
+    /**
+     * @return the index of the last line feed in the buffer before the given end index, '-1' if not found
+     */
+    protected static int lastIndexOfLineFeed(@NotNull final ByteBuffer buffer, int end) {
+        int index = end;
+        while ((index & 7) != 0) {
+            if (buffer.get(--index) == '\n') {
+                return index;
+            }
+        }
+        while (index >= 8) {
+            index -= 8;
+            // the buffer is big endian, the highest address is the least significant byte of the word
+            final long word = buffer.getLong(index) ^ 0x0A0A0A0A0A0A0A0AL;
+            final long found = ~(((word & 0x7F7F7F7F7F7F7F7FL) + 0x7F7F7F7F7F7F7F7FL) | word | 0x7F7F7F7F7F7F7F7FL);
+            if (found != 0) {
+                return index + 7 - (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        return -1;
+    }
+
+    protected void appendLineBytes(int start, int end) {
+        int length = Math.min(end - start, MAX_LINE_LENGTH - lineLength);
+        if (length > 0) {
+            if (lineLength + length > lineBytes.length) {
+                lineBytes = Arrays.copyOf(lineBytes, Math.min(
+                        Math.max(lineBytes.length * 2, lineLength + length), MAX_LINE_LENGTH));
+            }
+            buffer.position(start);
+            buffer.get(lineBytes, lineLength, length);
+            lineLength += length;
+        }
+    }
+
+    protected @NotNull String lineString() {
+        int length = lineLength;
+        if (length > 0 && lineBytes[length - 1] == '\r') {
+            length--;
+        }
+        return new String(lineBytes, 0, length, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,100 @@
+package com.composum.sling.dashboard.util;
+
+import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * the timestamps of the logfile lines in the Sling log format ('dd.MM.yyyy HH:mm:ss.SSS' at the line start)
+ */
+public class LogfileTimestamp {
+
+    public static final String LOG_TIME_FORMAT = "dd.MM.yyyy HH:mm:ss.SSS";
+    public static final int LOG_TIME_LENGTH = LOG_TIME_FORMAT.length();
+
+    protected static final String LOG_TIME_COMPLETION = "01.01.1970 00:00:00.000";
+
+    protected static final DateTimeFormatter LOG_TIME = DateTimeFormatter.ofPattern(LOG_TIME_FORMAT);
+
+    private LogfileTimestamp() {
+    }
+
+    /**
+     * parses the timestamp at the start of a logfile line without any intermediate objects
+     *
+     * @param line the logfile line
+     * @return the time (epoch milliseconds) of the line, '-1' if the line doesn't start with a timestamp
+     */
+    public static long parseLine(@NotNull final CharSequence line) {
+        if (line.length() < LOG_TIME_LENGTH
+                || line.charAt(2) != '.' || line.charAt(5) != '.' || line.charAt(10) != ' '
+                || line.charAt(13) != ':' || line.charAt(16) != ':' || line.charAt(19) != '.') {
+            return -1L;
+        }
+        final int day = digits(line, 0, 2);
+        final int month = digits(line, 3, 2);
+        final int year = digits(line, 6, 4);
+        final int hour = digits(line, 11, 2);
+        final int minute = digits(line, 14, 2);
+        final int second = digits(line, 17, 2);
+        final int millis = digits(line, 20, 3);
+        if (day < 0 || month < 0 || year < 0 || hour < 0 || minute < 0 || second < 0 || millis < 0) {
+            return -1L;
+        }
+        try {
+            return LocalDateTime.of(year, month, day, hour, minute, second, millis * 1000000)
+                    .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeException ignore) {
+            return -1L;
+        }
+    }
+
+    /**
+     * parses a time value of a request parameter, the log format and ISO date times are supported
+     *
+     * @param value the time value ('dd.MM.yyyy[ HH:mm[:ss[.SSS]]]' or 'yyyy-MM-ddTHH:mm[:ss[.SSS]]')
+     * @return the time (epoch milliseconds), 'null' if the value is blank or not parseable
+     */
+    public static @Nullable Long parseValue(@Nullable final String value) {
+        if (StringUtils.isNotBlank(value)) {
+            final String time = value.trim();
+            // a shortened log format ('dd.MM.yyyy', 'dd.MM.yyyy HH:mm', ...) is completed by the start of the period
+            final long logTime = parseLine(time.length() < LOG_TIME_LENGTH
+                    ? time + LOG_TIME_COMPLETION.substring(time.length()) : time);
+            if (logTime >= 0) {
+                return logTime;
+            }
+            try {
+                return LocalDateTime.parse(time).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            } catch (DateTimeParseException ignore) {
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the time formatted in the log format
+     */
+    public static @NotNull String format(long time) {
+        return LOG_TIME.format(LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault()));
+    }
+
+    protected static int digits(@NotNull final CharSequence line, int start, int length) {
+        int value = 0;
+        for (int i = start; i < start + length; i++) {
+            final char c = line.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+}
@@ -0,0 +1,121 @@
+package com.composum.sling.dashboard.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.function.Function;
+
+/**
+ * a single pass scanner for the path references in property values: a value which is an absolute path
+ * ('/' followed by at least one character) or absolute paths embedded in double quotes (e.g. in rich text);
+ * the characters which are not expected in a path are terminating a path candidate; the scanner is immutable
+ * and can be shared, nothing is allocated during a scan except the strings of the paths found
+ */
+public class PathReferenceScanner {
+
+    protected final boolean[] unexpected = new boolean[128];
+
+    /**
+     * @param unexpected the (ASCII) characters which are not allowed in a path
+     */
+    public PathReferenceScanner(@NotNull final String unexpected) {
+        for (int i = 0; i < unexpected.length(); i++) {
+            final char c = unexpected.charAt(i);
+            if (c < this.unexpected.length) {
+                this.unexpected[c] = true;
+            }
+        }
+    }
+
+    protected boolean isUnexpected(final char c) {
+        return c < unexpected.length && unexpected[c];
+    }
+
+    /**
+     * @return 'true' if the whole value is an absolute path
+     */
+    public boolean isPath(@NotNull final CharSequence value) {
+        final int length = value.length();
+        if (length < 2 || value.charAt(0) != '/') {
+            return false;
+        }
+        for (int i = 1; i < length; i++) {
+            if (isUnexpected(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param from the position to start the search
+     * @return the start of the next path embedded in double quotes (the position of the leading '/'),
+     * '-1' if no more path found; the path ends at the next double quote
+     */
+    public int findQuotedPath(@NotNull final CharSequence value, int from) {
+        final int length = value.length();
+        int pos = Math.max(from, 0);
+        while (pos < length - 3) {
+            if (value.charAt(pos) == '"' && value.charAt(pos + 1) == '/') {
+                int end = pos + 2;
+                char c = 0;
+                while (end < length && (c = value.charAt(end)) != '"' && !isUnexpected(c)) {
+                    end++;
+                }
+                if (end < length && c == '"' && end > pos + 2) {
+                    return pos + 1;
+                }
+                // no quote inside of the candidate, the next candidate can't start before its end
+                pos = Math.max(end, pos + 1);
+            } else {
+                pos++;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * adds the value itself if it's a path, otherwise all paths embedded in double quotes to the collection
+     */
+    public void findPaths(@Nullable final String value, @NotNull final Collection<? super String> paths) {
+        if (value != null && !value.isEmpty()) {
+            if (isPath(value)) {
+                paths.add(value);
+            } else {
+                int start = -1;
+                while ((start = findQuotedPath(value, start)) >= 0) {
+                    final int end = value.indexOf('"', start);
+                    paths.add(value.substring(start, end));
+                    start = end + 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * replaces the paths embedded in double quotes using the given mapping
+     *
+     * @param mapping the path mapping, returns 'null' if a path should not be replaced
+     * @return the value with replaced paths, 'null' if nothing has been replaced
+     */
+    public @Nullable String replaceQuotedPaths(@NotNull final String value,
+                                               @NotNull final Function<String, String> mapping) {
+        StringBuilder buffer = null;
+        int pos = 0;
+        int start = -1;
+        while ((start = findQuotedPath(value, start)) >= 0) {
+            final int end = value.indexOf('"', start);
+            final String replacement = mapping.apply(value.substring(start, end));
+            if (replacement != null) {
+                if (buffer == null) {
+                    buffer = new StringBuilder(value.length() + 32);
+                }
+                buffer.append(value, pos, start).append(replacement);
+                pos = end;
+            }
+            start = end + 1;
+        }
+        return buffer != null ? buffer.append(value, pos, value.length()).toString() : null;
+    }
+}
@@ -0,0 +1,298 @@
+package com.composum.sling.dashboard.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * a compact set of (absolute) paths stored as a trie of path segments: the common parents of the paths are
+ * stored only once and each segment name is stored only once per parent, lookups are allocation-free;
+ * the paths are iterated in tree order (a parent before its children, siblings ordered by name), empty
+ * segments are ignored and relative paths are handled as absolute paths
+ * <p>
+ * a subtree can be 'collapsed' if it is complete (e.g. written completely during a sorted traversal),
+ * all paths of a collapsed subtree are contained from then on but only the root of the subtree is stored
+ * (and iterated), so the memory of such a traversal is proportional to the open part of the tree
+ */
+public class PathSet extends AbstractSet<String> {
+
+    /**
+     * the order of the paths in a set, the tree order; a path is compared as if '/' is the lowest character
+     */
+    public static final Comparator<String> TREE_ORDER = (path, other) -> {
+        final int length = Math.min(path.length(), other.length());
+        for (int i = 0; i < length; i++) {
+            final char c = path.charAt(i);
+            final char o = other.charAt(i);
+            if (c != o) {
+                return c == '/' ? -1 : o == '/' ? 1 : c - o;
+            }
+        }
+        return path.length() - other.length();
+    };
+
+    protected static class Node {
+
+        protected static final Node[] NO_CHILDREN = new Node[0];
+
+        protected final String name;
+        protected Node[] children = NO_CHILDREN;
+        protected int childCount;
+        protected boolean member;
+        protected boolean collapsed;
+
+        protected Node(@NotNull final String name) {
+            this.name = name;
+        }
+
+        /**
+         * @return the index of the child with the name of the path segment; '-(insertion point) - 1' if not found
+         */
+        protected int indexOf(@NotNull final String path, int start, int end) {
+            int low = 0;
+            int high = childCount - 1;
+            while (low <= high) {
+                final int mid = (low + high) >>> 1;
+                final int compare = compare(children[mid].name, path, start, end);
+                if (compare < 0) {
+                    low = mid + 1;
+                } else if (compare > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+
+        protected @NotNull Node insert(int index, @NotNull final String name) {
+            if (childCount == children.length) {
+                children = Arrays.copyOf(children, Math.max(childCount * 2, 2));
+            }
+            System.arraycopy(children, index, children, index + 1, childCount - index);
+            childCount++;
+            return children[index] = new Node(name);
+        }
+
+        protected int countMembers() {
+            int count = member ? 1 : 0;
+            for (int i = 0; i < childCount; i++) {
+                count += children[i].countMembers();
+            }
+            return count;
+        }
+    }
+
+    protected static int compare(@NotNull final String name, @NotNull final String path, int start, int end) {
+        final int length = Math.min(name.length(), end - start);
+        for (int i = 0; i < length; i++) {
+            final int diff = name.charAt(i) - path.charAt(start + i);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return name.length() - (end - start);
+    }
+
+    protected Node root = new Node("");
+    protected int size;
+
+    /**
+     * @return the node of the path or the collapsed node which contains the path; 'null' if not present
+     */
+    protected @Nullable Node find(@NotNull final String path) {
+        Node node = root;
+        int start = path.startsWith("/") ? 1 : 0;
+        while (start < path.length() && !node.collapsed) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = path.length();
+            }
+            if (end > start) {
+                final int index = node.indexOf(path, start, end);
+                if (index < 0) {
+                    return null;
+                }
+                node = node.children[index];
+            }
+            start = end + 1;
+        }
+        return node;
+    }
+
+    /**
+     * @return 'true' if the path is contained as part of a collapsed subtree below the root of the subtree
+     */
+    public boolean isCollapsedBelow(@NotNull final String path) {
+        Node node = root;
+        int start = path.startsWith("/") ? 1 : 0;
+        while (start < path.length()) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = path.length();
+            }
+            if (end > start) {
+                if (node.collapsed) {
+                    return true;
+                }
+                final int index = node.indexOf(path, start, end);
+                if (index < 0) {
+                    return false;
+                }
+                node = node.children[index];
+            }
+            start = end + 1;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean contains(@Nullable final Object object) {
+        if (object instanceof String) {
+            final Node node = find((String) object);
+            return node != null && (node.member || node.collapsed);
+        }
+        return false;
+    }
+
+    @Override
+    public boolean add(@NotNull final String path) {
+        Node node = root;
+        int start = path.startsWith("/") ? 1 : 0;
+        while (start < path.length()) {
+            if (node.collapsed) {
+                return false;
+            }
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = path.length();
+            }
+            if (end > start) {
+                final int index = node.indexOf(path, start, end);
+                node = index >= 0 ? node.children[index] : node.insert(-index - 1, path.substring(start, end));
+            }
+            start = end + 1;
+        }
+        if (node.member || node.collapsed) {
+            return false;
+        }
+        node.member = true;
+        size++;
+        return true;
+    }
+
+    /**
+     * marks the path and all paths below as contained and drops the stored subtree of the path
+     */
+    public void collapse(@NotNull final String path) {
+        add(path);
+        final Node node = find(path);
+        if (node != null && !node.collapsed) {
+            size -= node.countMembers() - 1;
+            node.children = Node.NO_CHILDREN;
+            node.childCount = 0;
+            node.collapsed = true;
+        }
+    }
+
+    @Override
+    public boolean remove(@Nullable final Object object) {
+        if (object instanceof String) {
+            final Node node = find((String) object);
+            if (node != null && node.member && !node.collapsed) {
+                node.member = false;
+                size--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void clear() {
+        root = new Node("");
+        size = 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public @NotNull Iterator<String> iterator() {
+        return new PathIterator();
+    }
+
+    /**
+     * a depth first traversal of the trie using a stack of the nodes and the positions of the next children
+     */
+    protected class PathIterator implements Iterator<String> {
+
+        protected Node[] nodes = new Node[16];
+        protected int[] next = new int[16];
+        protected int depth;
+        protected String nextPath;
+
+        protected PathIterator() {
+            nodes[0] = root;
+            next[0] = -1;
+            advance();
+        }
+
+        protected void advance() {
+            nextPath = null;
+            while (depth >= 0) {
+                final Node node = nodes[depth];
+                if (next[depth] < 0) {
+                    next[depth] = 0;
+                    if (node.member || node.collapsed) {
+                        nextPath = buildPath();
+                        return;
+                    }
+                }
+                if (next[depth] < node.childCount) {
+                    if (++depth == nodes.length) {
+                        nodes = Arrays.copyOf(nodes, depth * 2);
+                        next = Arrays.copyOf(next, depth * 2);
+                    }
+                    nodes[depth] = node.children[next[depth - 1]++];
+                    next[depth] = -1;
+                } else {
+                    depth--;
+                }
+            }
+        }
+
+        protected @NotNull String buildPath() {
+            if (depth == 0) {
+                return "/";
+            }
+            final StringBuilder path = new StringBuilder();
+            for (int i = 1; i <= depth; i++) {
+                path.append('/').append(nodes[i].name);
+            }
+            return path.toString();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextPath != null;
+        }
+
+        @Override
+        public String next() {
+            if (nextPath == null) {
+                throw new NoSuchElementException();
+            }
+            final String path = nextPath;
+            advance();
+            return path;
+        }
+    }
+}
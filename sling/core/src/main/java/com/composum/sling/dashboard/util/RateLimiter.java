@@ -0,0 +1,41 @@
+package com.composum.sling.dashboard.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * a lock-free token bucket rate limiter implemented as 'generic cell rate algorithm': the state is the
+ * theoretical arrival time of the next permit, a burst of up to the bucket size permits is allowed
+ */
+public class RateLimiter {
+
+    protected final long interval;
+    protected final long tolerance;
+    protected final AtomicLong next;
+
+    /**
+     * @param permitsPerSecond the sustained rate
+     * @param burst            the size of the bucket (the max number of permits acquired at once)
+     */
+    public RateLimiter(int permitsPerSecond, int burst) {
+        interval = 1000000000L / Math.max(permitsPerSecond, 1);
+        tolerance = interval * (Math.max(burst, 1) - 1);
+        next = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * @return 'true' if a permit is available (and consumed), never blocks
+     */
+    public boolean tryAcquire() {
+        final long now = System.nanoTime();
+        while (true) {
+            final long arrival = next.get();
+            final long base = arrival - now > 0 ? arrival : now;
+            if (base - now > tolerance) {
+                return false;
+            }
+            if (next.compareAndSet(arrival, base + interval)) {
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.composum.sling.dashboard.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * a lock-free bounded ring buffer for multiple producers; each producer claims a slot by an atomic increment
+ * of the write cursor and overwrites the oldest element, readers are taking snapshots without any locking;
+ * an element which is written concurrently to a snapshot can be missing in this snapshot
+ *
+ * @param <T> the type of the elements
+ */
+public class RingBuffer<T> {
+
+    /**
+     * the content of a slot, the index (the claimed cursor value) identifies the element version of the slot
+     */
+    protected static final class Slot<T> {
+
+        protected final long index;
+        protected final T element;
+
+        protected Slot(long index, @NotNull final T element) {
+            this.index = index;
+            this.element = element;
+        }
+    }
+
+    protected final int capacity;
+    protected final AtomicReferenceArray<Slot<T>> slots;
+    protected final AtomicLong cursor = new AtomicLong();
+
+    public RingBuffer(int capacity) {
+        this.capacity = capacity;
+        this.slots = new AtomicReferenceArray<>(Math.max(capacity, 1));
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of elements added since the creation of the buffer
+     */
+    public long getCount() {
+        return cursor.get();
+    }
+
+    /**
+     * adds an element and overwrites the oldest element if the buffer is full; if the slot has been
+     * overwritten meanwhile by a newer element (a producer has lapped this one) the element is dropped
+     *
+     * @return the element which has been overwritten or dropped, 'null' if the slot was free
+     */
+    public T add(@NotNull final T element) {
+        if (capacity > 0) {
+            final long index = cursor.getAndIncrement();
+            final int position = (int) (index % capacity);
+            final Slot<T> slot = new Slot<>(index, element);
+            Slot<T> current;
+            do {
+                current = slots.get(position);
+                if (current != null && current.index > index) {
+                    return element;
+                }
+            } while (!slots.compareAndSet(position, current, slot));
+            return current != null ? current.element : null;
+        }
+        return element;
+    }
+
+    /**
+     * @return the elements currently available in the order of their claimed slots (the oldest first)
+     */
+    public @NotNull List<T> snapshot() {
+        final long end = cursor.get();
+        final long start = Math.max(end - capacity, 0L);
+        final List<T> result = new ArrayList<>((int) (end - start));
+        for (long index = start; index < end; index++) {
+            final Slot<T> slot = slots.get((int) (index % capacity));
+            if (slot != null && slot.index == index) {
+                result.add(slot.element);
+            }
+        }
+        return result;
+    }
+}
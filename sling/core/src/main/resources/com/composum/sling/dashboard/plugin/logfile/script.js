@@ -5,7 +5,25 @@ class LogfileView extends ViewWidget {
     constructor(element) {
         super(element);
         this.scrollToEnd();
-        setTimeout(this.tail.bind(this), 10000);
+        if (this.$el.data('stream') && window.EventSource) {
+            this.stream();
+        } else if (this.$el.data('tail')) {
+            setTimeout(this.tail.bind(this), 10000);
+        }
+    }
+
+    stream() {
+        const logger = this;
+        const source = new EventSource(logger.$el.data('stream'));
+        source.onmessage = function (event) {
+            logger.append(event.data + '\n');
+        };
+        source.onerror = function (event) {
+            if (source.readyState === EventSource.CLOSED) {
+                // streaming not available (e.g. max number of streams reached) - fallback to polling
+                setTimeout(logger.tail.bind(logger), 10000);
+            }
+        };
     }
 
     tail() {
@@ -14,11 +32,7 @@ class LogfileView extends ViewWidget {
             type: 'GET',
             url: logger.$el.data('tail'),
             success: function (result, msg, xhr) {
-                const scrollToEnd = Math.abs(logger.el.scrollTop + logger.el.clientHeight - logger.el.scrollHeight) < 20;
-                logger.el.value += result;
-                if (scrollToEnd) {
-                    logger.scrollToEnd();
-                }
+                logger.append(result);
             },
             complete: function (xhr, msg) {
                 setTimeout(logger.tail.bind(logger), 10000);
@@ -28,6 +42,14 @@ class LogfileView extends ViewWidget {
         });
     }
 
+    append(text) {
+        const scrollToEnd = Math.abs(this.el.scrollTop + this.el.clientHeight - this.el.scrollHeight) < 20;
+        this.el.value += text;
+        if (scrollToEnd) {
+            this.scrollToEnd();
+        }
+    }
+
     scrollToEnd() {
         this.el.scrollTop = this.el.scrollHeight;
     }
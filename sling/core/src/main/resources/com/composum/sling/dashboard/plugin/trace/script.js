@@ -0,0 +1,36 @@
+class TraceView extends ViewWidget {
+
+    static selector = '.dashboard-widget__trace';
+
+    constructor(element) {
+        super(element);
+        this.max = parseInt(this.$el.data('max')) || 1000;
+        if (this.$el.data('stream') && window.EventSource) {
+            this.stream();
+        }
+    }
+
+    stream() {
+        const trace = this;
+        const source = new EventSource(trace.$el.data('stream'));
+        source.onmessage = function (event) {
+            trace.$el.append(event.data);
+            // the oldest entries are removed like in the buffer of the service
+            const $entries = trace.$el.children('.card');
+            if ($entries.length > trace.max) {
+                $entries.slice(0, $entries.length - trace.max).remove();
+            }
+        };
+        source.addEventListener('reset', function (event) {
+            // the service has been restarted, all entries are sent again
+            trace.$el.empty();
+        });
+        source.addEventListener('dropped', function (event) {
+            trace.$el.find('.trace-dropped').remove();
+            trace.$el.append('<div class="trace-dropped alert alert-warning">'
+                + event.data + ' entries dropped (client too slow)</div>');
+        });
+    }
+}
+
+CPM.widgets.register(TraceView);
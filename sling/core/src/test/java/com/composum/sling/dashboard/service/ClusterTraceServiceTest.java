@@ -0,0 +1,210 @@
+package com.composum.sling.dashboard.service;
+
+import com.composum.sling.dashboard.service.TraceService.Level;
+import com.composum.sling.dashboard.service.TraceService.TraceEntry;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ClusterTraceServiceTest {
+
+    protected final List<HttpServer> servers = new ArrayList<>();
+    protected ClusterTraceService service;
+
+    @Before
+    public void setup() {
+        service = new ClusterTraceService();
+        service.activate(new ClusterTraceService.Config() {
+
+            @Override
+            public Class<? extends Annotation> annotationType() {
+                return ClusterTraceService.Config.class;
+            }
+
+            @Override
+            public String name() {
+                return "cluster";
+            }
+
+            @Override
+            public String label() {
+                return "Cluster";
+            }
+
+            @Override
+            public String[] nodes() {
+                return new String[0]; // the nodes are set by the tests, polled by the tests
+            }
+
+            @Override
+            public String authorization() {
+                return "Basic dGVzdDp0ZXN0";
+            }
+
+            @Override
+            public int pollInterval() {
+                return 5;
+            }
+
+            @Override
+            public int timeout() {
+                return 500;
+            }
+
+            @Override
+            public int traceMax() {
+                return 100;
+            }
+
+            @Override
+            public String timeFormat() {
+                return DefaultTraceService.DEFAULT_TIME_FORMAT;
+            }
+
+            @Override
+            public int rank() {
+                return 2000;
+            }
+        });
+    }
+
+    @After
+    public void cleanup() {
+        service.deactivate();
+        for (final HttpServer server : servers) {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * starts a stand-in of a nodes trace feed
+     *
+     * @param feed the feed content for the 'since' value of a request
+     * @return the URL of the feed
+     */
+    protected String startNode(Function<Long, String> feed) throws IOException {
+        final HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/trace.json", exchange -> {
+            final String query = exchange.getRequestURI().getQuery();
+            final long since = Long.parseLong(query.substring(query.indexOf("since=") + 6));
+            final byte[] content = "Basic dGVzdDp0ZXN0".equals(exchange.getRequestHeaders().getFirst("Authorization"))
+                    ? feed.apply(since).getBytes(StandardCharsets.UTF_8) : new byte[0];
+            exchange.sendResponseHeaders(content.length > 0 ? 200 : 401, content.length > 0 ? content.length : -1);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(content);
+            }
+        });
+        server.setExecutor(null);
+        server.start();
+        servers.add(server);
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/trace.json?trace=default";
+    }
+
+    protected static String feed(long since, long... timestamps) {
+        final StringBuilder entries = new StringBuilder();
+        long sequence = since;
+        for (final long timestamp : timestamps) {
+            entries.append(entries.length() > 0 ? "," : "")
+                    .append("{\"sequence\":").append(++sequence).append(",\"timestamp\":").append(timestamp)
+                    .append(",\"level\":\"").append(timestamp % 20 == 0 ? "error" : "info")
+                    .append("\",\"message\":\"entry ").append(timestamp).append("\"}");
+        }
+        return "{\"trace\":\"default\",\"entries\":[" + entries + "],\"sequence\":" + sequence + "}";
+    }
+
+    protected List<String> messages(Iterable<TraceEntry> entries) {
+        final List<String> messages = new ArrayList<>();
+        entries.forEach(entry -> messages.add(entry.getMessage()));
+        return messages;
+    }
+
+    @Test
+    public void mergedFeeds() throws IOException {
+        final String author = startNode(since -> since == 0 ? feed(since, 10, 30) : feed(since, 60));
+        final String publish = startNode(since -> since == 0 ? feed(since, 20, 40, 50) : feed(since));
+        service.nodes = List.of(new ClusterTraceService.Node("author", author),
+                new ClusterTraceService.Node("publish", publish));
+        service.poll();
+        assertEquals(List.of("[author] entry 10", "[publish] entry 20", "[author] entry 30",
+                "[publish] entry 40", "[publish] entry 50"), messages(service.getEntries(null)));
+        assertEquals(2L, service.nodes.get(0).cursor);
+        assertEquals(3L, service.nodes.get(1).cursor);
+        service.poll();
+        assertEquals(List.of("[author] entry 60"), messages(service.getEntriesSince(5L)));
+        assertEquals(3, service.getNumber(Level.INFO));
+        assertEquals(3, service.getNumber(Level.ERROR));
+    }
+
+    @Test
+    public void lateNode() throws IOException {
+        final boolean[] available = new boolean[1];
+        final String author = startNode(since -> since == 0 ? feed(since, 10, 50) : feed(since));
+        final String publish = startNode(since -> available[0] ? feed(since, 20, 40, 60) : "");
+        service.nodes = List.of(new ClusterTraceService.Node("author", author),
+                new ClusterTraceService.Node("publish", publish));
+        service.poll();
+        assertEquals(List.of("[author] entry 10", "[author] entry 50"), messages(service.getEntries(null)));
+        available[0] = true;
+        service.traceMax = 4;
+        service.poll();
+        // the older entries of the late node are inserted before the newer entries, the oldest entry is dropped
+        assertEquals(List.of("[publish] entry 20", "[publish] entry 40", "[author] entry 50", "[publish] entry 60"),
+                messages(service.getEntries(null)));
+        assertEquals(List.of("[publish] entry 20", "[publish] entry 40", "[publish] entry 60"),
+                messages(service.getEntriesSince(2L)));
+        assertEquals(3, service.getNumber(Level.ERROR));
+        assertEquals(1, service.getNumber(Level.INFO));
+    }
+
+    @Test
+    public void resetFeed() throws IOException {
+        final boolean[] restarted = new boolean[1];
+        final String author = startNode(since -> !restarted[0] ? feed(since, 10, 30)
+                : feed(0, 70).replace("\"entries\"", "\"reset\":true,\"entries\""));
+        final String publish = startNode(since -> since == 0 ? feed(since, 20) : feed(since));
+        service.nodes = List.of(new ClusterTraceService.Node("author", author),
+                new ClusterTraceService.Node("publish", publish));
+        service.poll();
+        assertEquals(List.of("[author] entry 10", "[publish] entry 20", "[author] entry 30"),
+                messages(service.getEntries(null)));
+        restarted[0] = true;
+        service.poll();
+        // the entries of the restarted node are received again, the previous ones are dropped
+        assertEquals(List.of("[publish] entry 20", "[author] entry 70"), messages(service.getEntries(null)));
+        assertEquals(1L, service.nodes.get(0).cursor);
+        assertEquals(1, service.getNumber(Level.ERROR));
+        assertEquals(1, service.getNumber(Level.INFO));
+    }
+
+    @Test
+    public void slowNode() throws IOException {
+        final String fast = startNode(since -> feed(since, since + 100));
+        final String slow = startNode(since -> {
+            try {
+                Thread.sleep(3000L);
+            } catch (InterruptedException ignore) {
+            }
+            return feed(since, 1);
+        });
+        service.nodes = List.of(new ClusterTraceService.Node("fast", fast),
+                new ClusterTraceService.Node("slow", slow));
+        final long start = System.currentTimeMillis();
+        service.poll();
+        assertTrue(System.currentTimeMillis() - start < 2500L);
+        assertEquals(List.of("[fast] entry 100"), messages(service.getEntries(null)));
+        assertEquals(0L, service.nodes.get(1).cursor);
+    }
+}
@@ -0,0 +1,379 @@
+package com.composum.sling.dashboard.service;
+
+import com.composum.sling.dashboard.service.ResourceExtractService.ExtractSession;
+import com.composum.sling.dashboard.service.ResourceExtractService.Extractor;
+import com.composum.sling.dashboard.service.ResourceExtractService.Mode;
+import com.composum.sling.dashboard.service.ResourceExtractService.PathMappingRule;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.apache.sling.testing.mock.sling.junit.SlingContext;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+public class DashboardExtractServiceTest {
+
+    @Rule
+    public final SlingContext context = new SlingContext(ResourceResolverType.RESOURCERESOLVER_MOCK);
+
+    protected DashboardExtractService service;
+
+    protected String[] pathRuleSet = new String[]{
+            "/content/site(/.*)?,cq:Page,1,/content/copy$1",
+            "/content/dam(/.*)?,dam:Asset,1,/content/dam/copy$1",
+            "/content/dam,sling:Folder,1"
+    };
+
+    @Before
+    public void setup() {
+        service = new DashboardExtractService();
+        service.activate(config(1));
+    }
+
+    protected ResourceExtractConfig config(final int scanThreads) {
+        return config(scanThreads, 0);
+    }
+
+    protected ResourceExtractConfig config(final int scanThreads, final int commitNodes) {
+        return new ResourceExtractConfig() {
+
+            @Override
+            public Class<? extends Annotation> annotationType() {
+                return ResourceExtractConfig.class;
+            }
+
+            @Override
+            public String[] predefinedPaths() {
+                return new String[0];
+            }
+
+            @Override
+            public String[] pathRuleSet() {
+                return pathRuleSet;
+            }
+
+            @Override
+            public String[] addZipEntries() {
+                return new String[0];
+            }
+
+            @Override
+            public String[] ignoredChildren() {
+                return new String[0];
+            }
+
+            @Override
+            public String[] ignoredProperties() {
+                return new String[]{"^jcr:(created|lastModified).*$"};
+            }
+
+            @Override
+            public int scanThreads() {
+                return scanThreads;
+            }
+
+            @Override
+            public int commitNodes() {
+                return commitNodes;
+            }
+
+            @Override
+            public long commitBytes() {
+                return 0;
+            }
+
+            @Override
+            public String checkpointPath() {
+                return "/var/extract";
+            }
+        };
+    }
+
+    protected static String pagePath(int index) {
+        return index == 0 ? "/content/site" : pagePath((index - 1) / 8) + "/p" + index;
+    }
+
+    /**
+     * generates a page tree with random references to pages, assets, components and missing resources
+     */
+    protected void createContent(int pages, int assets) throws PersistenceException {
+        final Random random = new Random(4711L);
+        context.create().resource("/content", "jcr:primaryType", "sling:Folder");
+        context.create().resource("/content/dam", "jcr:primaryType", "sling:Folder");
+        context.create().resource("/apps/site/components/page", "jcr:primaryType", "nt:unstructured");
+        for (int i = 0; i < assets; i++) {
+            context.create().resource("/content/dam/a" + i, "jcr:primaryType", "dam:Asset");
+            context.create().resource("/content/dam/a" + i + "/jcr:content", "jcr:primaryType", "nt:unstructured",
+                    "source", "/content/site/missing" + random.nextInt(10));
+        }
+        for (int i = 0; i < pages; i++) {
+            context.create().resource(pagePath(i), "jcr:primaryType", "cq:Page");
+            context.create().resource(pagePath(i) + "/jcr:content", "jcr:primaryType", "nt:unstructured",
+                    "sling:resourceType", "site/components/page",
+                    "template", "/apps/site/components/page",
+                    "link", pagePath(random.nextInt(pages)),
+                    "links", new String[]{
+                            pagePath(random.nextInt(pages)),
+                            random.nextInt(4) == 0 ? "/content/site/missing" + i : pagePath(random.nextInt(pages))
+                    },
+                    "text", "<p><a href=\"" + pagePath(random.nextInt(pages)) + "\">link</a>"
+                            + "<img src=\"/content/dam/a" + random.nextInt(assets) + "\"/></p>");
+        }
+        context.resourceResolver().commit();
+    }
+
+    protected DashboardExtractService.DashboardExtractSession scan(int scanThreads, String... paths) {
+        final ExtractSession session = service.createSession(config(scanThreads), context.resourceResolver(), 4);
+        session.scanExtractPaths(paths);
+        return (DashboardExtractService.DashboardExtractSession) session;
+    }
+
+    @Test
+    public void parallelScan() throws PersistenceException {
+        createContent(1000, 100);
+        final DashboardExtractService.DashboardExtractSession sequential = scan(1, "/content/site/p3", "/content/dam/a7");
+        final DashboardExtractService.DashboardExtractSession parallel = scan(4, "/content/site/p3", "/content/dam/a7");
+        for (final String key : new String[]{"source", "target", "outside", "missed"}) {
+            assertFalse(key, sequential.getPathSets().get(key).isEmpty());
+        }
+        assertEquals(sequential.getPathSets(), parallel.getPathSets());
+        assertEquals(sequential.sourceToTarget, parallel.sourceToTarget);
+        // the scan results are released after the scan
+        assertTrue(sequential.scanNodes.isEmpty());
+        assertTrue(parallel.scanNodes.isEmpty());
+    }
+
+    @Test
+    public void checkpointResume() throws Exception {
+        createContent(100, 10);
+        final DashboardExtractService.DashboardExtractSession session = scan(1, "/content/site/p3");
+        final ResourceExtractConfig config = config(1, 10);
+        // a completed source of the interrupted copy: a target without other targets inside or above
+        String completed = null;
+        for (final String source : session.sourceToTarget.keySet()) {
+            final String target = session.sourceToTarget.get(source);
+            if (session.sourceToTarget.values().stream().noneMatch(other -> !other.equals(target)
+                    && (other.startsWith(target + "/") || target.startsWith(other + "/")))) {
+                completed = source;
+                break;
+            }
+        }
+        assumeTrue(completed != null);
+        final String checkpointPath =
+                service.new CopyToTargetExtractor(config, Mode.MERGE, false, session).checkpointPath;
+        context.create().resource(checkpointPath + "/batch-1", "paths", new String[]{completed});
+        context.resourceResolver().commit();
+        assertNotNull(context.resourceResolver().getResource(checkpointPath));
+        try (DashboardExtractService.CopyToTargetExtractor extractor =
+                     service.new CopyToTargetExtractor(config, Mode.MERGE, false, session)) {
+            assertEquals(checkpointPath, extractor.checkpointPath);
+            session.extract(extractor);
+        }
+        for (final Map.Entry<String, String> entry : session.sourceToTarget.entrySet()) {
+            if (session.getSourcePathSet().contains(entry.getKey())
+                    && context.resourceResolver().getResource(entry.getKey()) != null) {
+                assertEquals(entry.getKey(), !entry.getKey().equals(completed),
+                        context.resourceResolver().getResource(entry.getValue()) != null);
+            }
+        }
+        assertNull(context.resourceResolver().getResource(checkpointPath));
+    }
+
+    @Test
+    public void interruptedCopy() throws Exception {
+        createContent(100, 10);
+        final DashboardExtractService.DashboardExtractSession session = scan(1, "/content/site/p3");
+        final ResourceExtractConfig config = config(1, 10);
+        final List<String> created = new ArrayList<>(); // the new targets in the order of the copy
+        final List<Integer> commits = new ArrayList<>(); // the number of targets created at each batch commit
+        final DashboardExtractService.CopyToTargetExtractor interrupted =
+                service.new CopyToTargetExtractor(config, Mode.MERGE, false, session) {
+
+                    @Override
+                    protected Resource copyResource(@NotNull final Resource source, @NotNull final Resource parent,
+                                                    @NotNull final String name, final int depth)
+                            throws PersistenceException {
+                        if (created.size() == 25) {
+                            throw new PersistenceException("interrupted");
+                        }
+                        if (parent.getChild(name) == null) {
+                            created.add(parent.getPath() + "/" + name);
+                        }
+                        return super.copyResource(source, parent, name, depth);
+                    }
+
+                    @Override
+                    protected void commitBatch() throws PersistenceException {
+                        super.commitBatch();
+                        commits.add(created.size());
+                    }
+                };
+        final String checkpointPath = interrupted.checkpointPath;
+        try {
+            session.extract(interrupted);
+            fail("copy not interrupted");
+        } catch (PersistenceException ex) {
+            assertEquals("interrupted", ex.getMessage());
+        } finally {
+            interrupted.close();
+        }
+        assertFalse(commits.isEmpty());
+        final int committed = commits.get(commits.size() - 1);
+        assertTrue(committed < created.size());
+        // the committed batches are kept, the open batch is reverted
+        for (int i = 0; i < created.size(); i++) {
+            assertEquals(created.get(i), i < committed || created.subList(0, committed).contains(created.get(i)),
+                    context.resourceResolver().getResource(created.get(i)) != null);
+        }
+        final Resource checkpoint = context.resourceResolver().getResource(checkpointPath);
+        assertNotNull(checkpoint);
+        int completed = 0;
+        for (final Resource batch : checkpoint.getChildren()) {
+            for (final String source : batch.getValueMap().get("paths", new String[0])) {
+                assertNotNull(source, context.resourceResolver().getResource(session.getTargetPath(source)));
+                completed++;
+            }
+        }
+        assertTrue(completed > 0);
+        // the second run skips the completed sources and finishes the copy
+        try (DashboardExtractService.CopyToTargetExtractor extractor =
+                     service.new CopyToTargetExtractor(config, Mode.MERGE, false, session)) {
+            assertEquals(checkpointPath, extractor.checkpointPath);
+            assertEquals(completed, extractor.completed.size());
+            session.extract(extractor);
+            assertTrue(extractor.completed.isEmpty());
+        }
+        for (final String source : session.getSourcePathSet()) {
+            final String target = session.getTargetPath(source);
+            if (target != null && !target.equals(source) && context.resourceResolver().getResource(source) != null) {
+                assertNotNull(target, context.resourceResolver().getResource(target));
+            }
+        }
+        assertNull(context.resourceResolver().getResource(checkpointPath));
+    }
+
+    @Test
+    public void jsonExtract() throws Exception {
+        createContent(200, 10);
+        // renderers without content, the JSON contains the nested target objects only
+        for (final Class<?> type : new Class<?>[]{JsonRenderer.class, XmlRenderer.class}) {
+            final Field field = DashboardExtractService.class.getDeclaredField(
+                    type == JsonRenderer.class ? "jsonRenderer" : "xmlRenderer");
+            field.setAccessible(true);
+            field.set(service, Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{type},
+                    (proxy, method, args) -> method.getReturnType() == boolean.class ? Boolean.TRUE : null));
+        }
+        // the order of the targets differs from the order of the sources
+        pathRuleSet = new String[]{
+                "/content/site/(p[13])(/.*)?,cq:Page,1,/content/x/$1$2",
+                "/content/site/(p2)(/.*)?,cq:Page,1,/content/y/$1$2",
+                "/content/site(/.*)?,cq:Page,1,/content/copy$1",
+                "/content/dam(/.*)?,dam:Asset,1,/content/dam/copy$1",
+                "/content/dam,sling:Folder,1"
+        };
+        final DashboardExtractService.DashboardExtractSession session =
+                scan(1, "/content/site/p1", "/content/site/p2", "/content/site/p3", "/content/dam/a7");
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (Extractor extractor = service.createJsonExtractor(config(1), null, true, session, output)) {
+            session.extract(extractor);
+        }
+        final JsonObject json = new JsonParser().parse(output.toString(StandardCharsets.UTF_8.name()))
+                .getAsJsonObject();
+        int count = 0;
+        for (final Map.Entry<String, String> entry : session.sourceToTarget.entrySet()) {
+            if (session.getSourcePathSet().contains(entry.getKey()) && !entry.getKey().equals(entry.getValue())) {
+                // each target is written in the object of its parent
+                JsonObject object = json;
+                for (final String name : entry.getValue().substring(1).split("/")) {
+                    object = object.getAsJsonObject(name);
+                    assertNotNull(entry.getValue(), object);
+                }
+                count++;
+            }
+        }
+        assertTrue(count > 10);
+    }
+
+    @Test
+    public void pathRuleIndex() {
+        assertEquals("/content/site", PathMappingRule.literalPrefix(Pattern.compile("/content/site(/.*)?")));
+        assertEquals("/content/", PathMappingRule.literalPrefix(Pattern.compile("^/content/(site)/[^/]+(/.+)$")));
+        assertEquals("/content/dam/a.", PathMappingRule.literalPrefix(Pattern.compile("/content/dam/a\\.b+")));
+        assertEquals("/var/data/item", PathMappingRule.literalPrefix(Pattern.compile("/var/data/items?(/.+)")));
+        assertEquals("/content/", PathMappingRule.literalPrefix(Pattern.compile("/content/(a|b)/.*")));
+        assertEquals("", PathMappingRule.literalPrefix(Pattern.compile("/content/a|/apps/b")));
+        assertEquals("", PathMappingRule.literalPrefix(Pattern.compile("(?i)/content/site")));
+        final List<PathMappingRule> ruleSet = new ArrayList<>();
+        for (final String expression : new String[]{
+                "/content/(site)/[^/]+(/.+),cq:Page,1,/content/test/reference$2",
+                "/content/(test)(/.+),cq:Page,1",
+                "/content/dam(/[^/]+(/.+)),dam:Asset,1,/content/dam/test/reference$2",
+                "/var/commerce/products/data(/.+),(nt|sling):[Ff]older,1,/var/commerce/products/test$1",
+                "/var/commerce/products/data(/.+),nt:unstructured,*,/var/commerce/products/test$1",
+                "/content/site/en(/.*)?,cq:Page,1",
+                ".*/jcr:content(/.*)?,*,*"
+        }) {
+            ruleSet.add(new PathMappingRule(expression));
+        }
+        final DashboardExtractService.PathRuleIndex index = new DashboardExtractService.PathRuleIndex(ruleSet);
+        for (final String path : new String[]{
+                "/content", "/content/site", "/content/site/en", "/content/site/en/page", "/content/site/de/page",
+                "/content/test/page", "/content/dam/site/image.png", "/content/dam", "/var/commerce/products/data/a",
+                "/content/site/en/page/jcr:content", "/apps/site/jcr:content/par"
+        }) {
+            final List<PathMappingRule> expected = new ArrayList<>();
+            for (final PathMappingRule rule : ruleSet) {
+                if (rule.sourcePathPattern.matcher(path).matches()) {
+                    expected.add(rule);
+                }
+            }
+            assertEquals(path, expected, index.getRules(path));
+        }
+    }
+
+    /**
+     * enabled via '-Dextract.benchmark.nodes=100000' (number of resources of the generated content)
+     */
+    @Test
+    public void benchmark() throws PersistenceException {
+        final int nodes = Integer.getInteger("extract.benchmark.nodes", 0);
+        assumeTrue(nodes > 0);
+        createContent(nodes / 2, nodes / 100 + 1);
+        Map<String, ?> expected = null;
+        for (final int threads : new int[]{1, 2, 4, 8}) {
+            final long start = System.nanoTime();
+            final DashboardExtractService.DashboardExtractSession session = scan(threads, "/content/site");
+            final long time = System.nanoTime() - start;
+            if (expected == null) {
+                expected = session.getPathSets();
+            } else {
+                assertEquals(expected, session.getPathSets());
+            }
+            System.out.printf("%d threads: %6d ms, %d source paths%n",
+                    threads, time / 1000000L, session.getSourcePathSet().size());
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package com.composum.sling.dashboard.service;
+
+import com.composum.sling.dashboard.service.LogfileService.Histogram;
+import com.composum.sling.dashboard.service.LogfileService.Logfile;
+import com.composum.sling.dashboard.util.LogfileTimestamp;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DefaultLogfileServiceTest {
+
+    protected Path directory;
+    protected Path logfile;
+    protected DefaultLogfileService service;
+
+    @Before
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("logs");
+        logfile = directory.resolve("error.log");
+        service = new DefaultLogfileService();
+        service.followRotation = true;
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        final File[] files = directory.toFile().listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                Files.delete(file.toPath());
+            }
+        }
+        Files.delete(directory);
+    }
+
+    protected void append(Path file, String content) throws IOException {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    protected Logfile getLogfile() {
+        final Logfile index = service.getLogfile(logfile.toFile(),
+                Pattern.compile("\\*ERROR\\*"), Pattern.compile("\\*WARN\\*"), 100000L);
+        assertNotNull(index);
+        return index;
+    }
+
+    protected List<String> readLines(Logfile index, long position) throws IOException {
+        final List<String> lines = new ArrayList<>();
+        index.read(position, (line, linePosition) -> lines.add(line));
+        return lines;
+    }
+
+    @Test
+    public void renamedFile() throws IOException {
+        append(logfile, "*INFO* one\n*ERROR* two\n");
+        final Logfile index = getLogfile();
+        index.update();
+        assertEquals(2, index.getLines());
+        final long position = index.getPosition();
+        append(logfile, "*WARN* three\n");
+        Files.move(logfile, directory.resolve("error.log.1"));
+        append(logfile, "*ERROR* four\n");
+        index.update();
+        assertEquals(1, index.getGeneration());
+        assertEquals(4, index.getLines());
+        assertEquals(2, index.getErrors());
+        assertEquals(1, index.getWarnings());
+        final List<String> rest = new ArrayList<>();
+        index.readRotated(position, (line, linePosition) -> rest.add(line));
+        assertEquals(1, rest.size());
+        assertEquals("*WARN* three", rest.get(0));
+        assertEquals("*ERROR* four", readLines(index, Logfile.LIMITED_START).get(0));
+    }
+
+    @Test
+    public void compressedFile() throws IOException {
+        append(logfile, "*INFO* one\n");
+        final Logfile index = getLogfile();
+        index.update();
+        append(logfile, "*ERROR* two\n");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(directory.resolve("error.log.1.gz")))) {
+            Files.copy(logfile, out);
+        }
+        Files.delete(logfile);
+        append(logfile, "*INFO* three\n");
+        index.update();
+        assertEquals(1, index.getGeneration());
+        assertEquals(3, index.getLines());
+        assertEquals(1, index.getErrors());
+    }
+
+    @Test
+    public void compressedArchive() throws IOException {
+        final StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            content.append(i % 10 == 0 ? "*ERROR* " : "*INFO* ").append(i).append('\n');
+        }
+        final Path archive = directory.resolve("error.log.2026-10-01.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(archive))) {
+            out.write(content.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        final Logfile index = service.getLogfile(archive.toFile(),
+                Pattern.compile("\\*ERROR\\*"), Pattern.compile("\\*WARN\\*"), 100L);
+        assertNotNull(index);
+        index.update();
+        assertEquals(5000, index.getLines());
+        assertEquals(500, index.getErrors());
+        assertEquals(content.length(), index.getPosition());
+        final List<String> tail = readLines(index, Logfile.LIMITED_START);
+        assertEquals("*INFO* 4999", tail.get(tail.size() - 1));
+        assertTrue(content.toString().contains("\n" + tail.get(0) + "\n")); // the first line is complete
+        assertTrue(tail.size() < 10);
+    }
+
+    @Test
+    public void backgroundIndexing() throws IOException, InterruptedException {
+        final Path archive = directory.resolve("error.log.1.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(archive))) {
+            out.write("*ERROR* one\n*INFO* two\n".getBytes(StandardCharsets.UTF_8));
+        }
+        final Logfile index = service.getLogfile(archive.toFile(),
+                Pattern.compile("\\*ERROR\\*"), Pattern.compile("\\*WARN\\*"), 100L);
+        assertNotNull(index);
+        index.requestUpdate();
+        for (int i = 0; i < 100 && index.getLines() < 2; i++) {
+            Thread.sleep(20L);
+        }
+        assertEquals(2, index.getLines());
+        assertEquals(1, index.getErrors());
+        service.deactivate();
+    }
+
+    @Test
+    public void parallelSearch() throws IOException {
+        final StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            content.append(String.format("17.10.2026 %02d:%02d:%02d.000 ", i / 3600, i / 60 % 60, i % 60))
+                    .append(i % 7 == 0 ? "*ERROR* " : "*INFO* ").append(i).append('\n');
+            if (i % 7 == 0) {
+                content.append("\tat com.example.Stacktrace\n");
+            }
+        }
+        append(logfile, content.toString());
+        service.searchChunkSize = 4096;
+        final Logfile index = getLogfile();
+        final Pattern pattern = Pattern.compile("ERROR\\* \\d*5$");
+        final List<String> expected = new ArrayList<>();
+        for (String line : content.toString().split("\n")) {
+            if (pattern.matcher(line).find()) {
+                expected.add(line);
+            }
+        }
+        final List<String> found = new ArrayList<>();
+        long position = 0;
+        long next;
+        while ((next = index.search(position, pattern, null, null, 50, (line, linePosition) -> {
+            assertEquals(line + "\n", content.substring((int) linePosition, (int) linePosition + line.length() + 1));
+            found.add(line);
+        })) > position) {
+            position = next;
+        }
+        assertEquals(content.length(), position);
+        assertEquals(expected, found);
+        // the time range includes the (timestamp less) stacktrace lines of the matching entries
+        final List<String> range = new ArrayList<>();
+        index.search(0, Pattern.compile("ERROR|Stacktrace"), LogfileTimestamp.parseValue("17.10.2026 01:00"),
+                LogfileTimestamp.parseValue("17.10.2026 01:00:13"), 1000, (line, linePosition) -> range.add(line));
+        assertEquals(4, range.size());
+        assertEquals("17.10.2026 01:00:05.000 *ERROR* 3605", range.get(0));
+        assertEquals("\tat com.example.Stacktrace", range.get(3));
+    }
+
+    @Test
+    public void stoppedChunk() throws IOException {
+        final AtomicBoolean stop = new AtomicBoolean();
+        final DefaultLogfileService.SearchChunk chunk = new DefaultLogfileService.SearchChunk(0L, 1000L,
+                Pattern.compile("ERROR"), null, null, 10, stop);
+        chunk.handleLine("*ERROR* 1", 0L);
+        stop.set(true); // the wave is complete, a running scan is stopped with the next line
+        try {
+            chunk.handleLine("*ERROR* 2", 10L);
+            fail("scan not stopped");
+        } catch (DefaultLogfileService.SearchStop expected) {
+        }
+        assertEquals(1, chunk.hits.size());
+    }
+
+    @Test
+    public void timeRangeSearch() throws IOException {
+        final List<Long> chunks = new ArrayList<>();
+        service = new DefaultLogfileService() {
+            @Override
+            protected long nextChunkEnd(FileChannel channel, long chunkStart, long end) throws IOException {
+                chunks.add(chunkStart);
+                return super.nextChunkEnd(channel, chunkStart, end);
+            }
+        };
+        service.searchChunkSize = 4096;
+        final StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            content.append(String.format("17.10.2026 %02d:%02d:%02d.000 *INFO* %d\n",
+                    i / 3600, i / 60 % 60, i % 60, i));
+        }
+        append(logfile, content.toString());
+        final Logfile index = getLogfile();
+        final Long from = LogfileTimestamp.parseValue("17.10.2026 02:00");
+        final List<String> found = new ArrayList<>();
+        final long next = index.search(0, Pattern.compile("INFO"), from,
+                LogfileTimestamp.parseValue("17.10.2026 02:00:10"), 100, (line, linePosition) -> found.add(line));
+        assertEquals(10, found.size());
+        assertEquals("17.10.2026 02:00:00.000 *INFO* 7200", found.get(0));
+        // the search starts at the 'from' time and ends with the first chunk after the 'to' time
+        assertEquals(Files.size(logfile), next);
+        assertEquals(index.seek(from), (long) chunks.get(0));
+        assertTrue(chunks.size() <= service.searchParallelism);
+        service.deactivate();
+    }
+
+    @Test
+    public void seekByTime() throws IOException {
+        final StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 80000; i++) {
+            content.append(String.format("17.10.2026 %02d:%02d:%02d.000 *INFO* %d\n", i / 3600, i / 60 % 60, i % 60, i));
+            if (i % 100 == 0) {
+                content.append("\tat com.example.Stacktrace\n");
+            }
+        }
+        append(logfile, content.toString());
+        final Logfile index = service.getLogfile(logfile.toFile(),
+                Pattern.compile("\\*ERROR\\*"), Pattern.compile("\\*WARN\\*"), 1000000L);
+        assertNotNull(index);
+        index.update();
+        assertTrue(index.getStartPosition() > 0);
+        for (final int i : new int[]{0, 1, 100, 4711, 50000, 79000, 79999}) {
+            final String line = String.format("17.10.2026 %02d:%02d:%02d.000 *INFO* %d\n", i / 3600, i / 60 % 60, i % 60, i);
+            final long time = LogfileTimestamp.parseLine(line);
+            assertEquals(content.indexOf(line), index.seek(time));
+            assertEquals(content.indexOf(line), index.seek(time - 500L));
+        }
+        assertEquals(0L, index.seek(LogfileTimestamp.parseValue("01.01.2026")));
+        assertEquals(content.length(), index.seek(LogfileTimestamp.parseValue("18.10.2026")));
+    }
+
+    @Test
+    public void histogram() throws IOException {
+        final long now = System.currentTimeMillis();
+        final String recent = LogfileTimestamp.format(now - 5 * 60000L);
+        append(logfile, LogfileTimestamp.format(now - 2 * 86400000L) + " *ERROR* too old\n"
+                + recent + " *ERROR* one\n\tat com.example.Stacktrace *ERROR*\n"
+                + recent + " *WARN* two\n"
+                + LogfileTimestamp.format(now) + " *ERROR* three\n");
+        final Logfile index = getLogfile();
+        index.update();
+        final Histogram histogram = index.getHistogram();
+        final int[] errors = histogram.getErrors();
+        assertEquals(DefaultLogfileService.HISTOGRAM_BUCKETS, errors.length);
+        assertEquals(1, errors[errors.length - 1]);
+        assertEquals(2, errors[errors.length - 6]);
+        assertEquals(1, histogram.getWarnings()[errors.length - 6]);
+        assertEquals(3, Arrays.stream(errors).sum());
+        final Histogram aggregated = histogram.aggregate(96);
+        assertEquals(96, aggregated.getErrors().length);
+        assertEquals(15 * 60000L, aggregated.getBucketSize());
+        assertEquals(3, Arrays.stream(aggregated.getErrors()).sum());
+    }
+
+    @Test
+    public void truncatedFile() throws IOException {
+        append(logfile, "*INFO* one\n*INFO* two\n");
+        final Logfile index = getLogfile();
+        index.update();
+        Files.write(logfile, "*ERROR* x\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.TRUNCATE_EXISTING);
+        index.update();
+        assertEquals(1, index.getGeneration());
+        assertEquals(3, index.getLines());
+        assertEquals(1, index.getErrors());
+        assertEquals(index.getPosition(), Files.size(logfile));
+    }
+
+    @Test
+    public void eviction() throws IOException {
+        append(logfile, "*INFO* one\n");
+        final Path archive = directory.resolve("error.log.1");
+        append(archive, "*INFO* zero\n");
+        final Logfile index = getLogfile();
+        index.update();
+        final Logfile rotated = service.getLogfile(archive.toFile(),
+                Pattern.compile("\\*ERROR\\*"), Pattern.compile("\\*WARN\\*"), 100000L);
+        assertNotNull(rotated);
+        assertEquals(2, service.logfiles.size());
+        service.pollWatchedLogfiles();
+        assertEquals(2, service.logfiles.size());
+        // a removed file is dropped with the next poll
+        Files.delete(archive);
+        service.pollWatchedLogfiles();
+        assertEquals(1, service.logfiles.size());
+        assertTrue(index == getLogfile());
+        // an index with another size limit is indexed separately
+        assertTrue(index != service.getLogfile(logfile.toFile(),
+                Pattern.compile("\\*ERROR\\*"), Pattern.compile("\\*WARN\\*"), 100L));
+        service.logfiles.values().removeIf(other -> other != index);
+        // an unused index is dropped after the idle timeout
+        service.idleTimeout = 0L;
+        ((DefaultLogfileService.DefaultLogfile) index).lastAccess -= 10L;
+        service.pollWatchedLogfiles();
+        assertTrue(service.logfiles.isEmpty());
+        assertTrue(index != getLogfile());
+        assertTrue(service.readerPool.size() <= DefaultLogfileService.READER_POOL_SIZE);
+    }
+}
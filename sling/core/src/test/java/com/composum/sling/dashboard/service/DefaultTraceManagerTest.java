@@ -0,0 +1,139 @@
+package com.composum.sling.dashboard.service;
+
+import com.composum.sling.dashboard.service.TraceService.Level;
+import com.composum.sling.dashboard.service.TraceService.TraceEntry;
+import com.google.gson.stream.JsonWriter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class DefaultTraceManagerTest {
+
+    /**
+     * a trace service implementing the methods of the initial API only
+     */
+    protected static class SimpleTraceService implements TraceService {
+
+        protected final String name;
+        protected String label;
+        protected int rank;
+        protected final List<TraceEntry> entries = new ArrayList<>();
+
+        protected SimpleTraceService(String name, String label, int rank) {
+            this.name = name;
+            this.label = label;
+            this.rank = rank;
+        }
+
+        @Override
+        public @NotNull String getName() {
+            return name;
+        }
+
+        @Override
+        public @NotNull String getLabel() {
+            return label;
+        }
+
+        @Override
+        public int getRank() {
+            return rank;
+        }
+
+        @Override
+        public void trace(@NotNull Level level, @Nullable String reference, @NotNull String message, Object... args) {
+            final Date time = new Date();
+            final String text = String.format(message, args);
+            entries.add(new TraceEntry() {
+
+                @Override
+                public @NotNull Date getTime() {
+                    return time;
+                }
+
+                @Override
+                public @NotNull Level getLevel() {
+                    return level;
+                }
+
+                @Override
+                public @Nullable String getReference() {
+                    return reference;
+                }
+
+                @Override
+                public @NotNull String getMessage() {
+                    return text;
+                }
+
+                @Override
+                public @Nullable <T> T getProperty(@NotNull String name, T defaultValue) {
+                    return defaultValue;
+                }
+
+                @Override
+                public void toJson(@NotNull JsonWriter writer) {
+                }
+            });
+        }
+
+        @Override
+        public @NotNull Iterable<TraceEntry> getEntries(@Nullable Level level) {
+            return entries;
+        }
+
+        @Override
+        public int getNumber(@NotNull Level level) {
+            return entries.size();
+        }
+    }
+
+    @Test
+    public void traceOrder() {
+        final DefaultTraceManager manager = new DefaultTraceManager();
+        final SimpleTraceService jobs = new SimpleTraceService("jobs", "Jobs", 10000);
+        final SimpleTraceService beta = new SimpleTraceService("beta", "Beta", 100);
+        final SimpleTraceService alpha = new SimpleTraceService("alpha", "Alpha", 100);
+        final SimpleTraceService other = new SimpleTraceService("other", "Other", 9000);
+        manager.bindTraceService(jobs);
+        manager.bindTraceService(beta);
+        manager.bindTraceService(alpha);
+        manager.bindTraceService(other);
+        // ordered by the rank numerically (not by the formatted rank) and by the label of each service
+        assertEquals(List.of(alpha, beta, other, jobs), manager.getTraces());
+        // a modified configuration of a service changes the order
+        beta.label = "Aardvark";
+        manager.updatedTraceService(beta);
+        assertEquals(List.of(beta, alpha, other, jobs), manager.getTraces());
+        other.rank = 50;
+        manager.updatedTraceService(other);
+        assertEquals(List.of(other, beta, alpha, jobs), manager.getTraces());
+        manager.unbindTraceService(other);
+        assertEquals(List.of(beta, alpha, jobs), manager.getTraces());
+        assertEquals(3, manager.getTraceNumber());
+    }
+
+    @Test
+    public void simpleService() {
+        final DefaultTraceManager manager = new DefaultTraceManager();
+        final SimpleTraceService service = new SimpleTraceService("default", "Default", 100);
+        manager.bindTraceService(service);
+        manager.trace(null, Level.INFO, null, "entry %d", 1);
+        final TraceEntry entry = service.entries.get(0);
+        assertEquals(entry.getTime().getTime(), entry.getTimestamp());
+        assertEquals(0L, entry.getSequence());
+        assertEquals(0L, service.getLastSequence());
+        assertEquals(List.of(entry), manager.getEntries(null, null));
+        assertFalse(manager.getEntriesSince(null, 0L).iterator().hasNext());
+        // a service without listeners can't be streamed
+        assertNull(manager.subscribe(null, 10));
+    }
+}
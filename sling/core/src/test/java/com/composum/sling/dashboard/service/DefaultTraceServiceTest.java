@@ -0,0 +1,378 @@
+package com.composum.sling.dashboard.service;
+
+import com.composum.sling.dashboard.service.TraceService.Level;
+import com.composum.sling.dashboard.service.TraceService.TraceEntry;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.annotation.Annotation;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DefaultTraceServiceTest {
+
+    protected DefaultTraceService service;
+    protected boolean collapseDuplicates;
+    protected int rateLimit;
+
+    @Before
+    public void setup() {
+        service = new DefaultTraceService();
+        service.activate(config("debug", 5, "warning", 3));
+    }
+
+    protected DefaultTraceService.Config config(String traceLevel, int traceMax, String keepLevel, int keepMax) {
+        return config(traceLevel, traceMax, keepLevel, keepMax, null);
+    }
+
+    protected DefaultTraceService.Config config(String traceLevel, int traceMax, String keepLevel, int keepMax,
+                                                String persistencePath) {
+        final boolean collapseDuplicates = this.collapseDuplicates;
+        final int rateLimit = this.rateLimit;
+        return new DefaultTraceService.Config() {
+
+            @Override
+            public Class<? extends Annotation> annotationType() {
+                return DefaultTraceService.Config.class;
+            }
+
+            @Override
+            public String name() {
+                return "test";
+            }
+
+            @Override
+            public String label() {
+                return "Test";
+            }
+
+            @Override
+            public String traceLevel() {
+                return traceLevel;
+            }
+
+            @Override
+            public int traceMax() {
+                return traceMax;
+            }
+
+            @Override
+            public String keepLevel() {
+                return keepLevel;
+            }
+
+            @Override
+            public int keepMax() {
+                return keepMax;
+            }
+
+            @Override
+            public boolean collapseDuplicates() {
+                return collapseDuplicates;
+            }
+
+            @Override
+            public int rateLimit() {
+                return rateLimit;
+            }
+
+            @Override
+            public String timeFormat() {
+                return DefaultTraceService.DEFAULT_TIME_FORMAT;
+            }
+
+            @Override
+            public int rank() {
+                return 1000;
+            }
+
+            @Override
+            public String persistencePath() {
+                return persistencePath;
+            }
+
+            @Override
+            public int persistenceQueue() {
+                return 1000;
+            }
+
+            @Override
+            public int persistenceMaxAge() {
+                return 7;
+            }
+
+            @Override
+            public int persistenceMaxSize() {
+                return 1;
+            }
+        };
+    }
+
+    protected List<String> messages(Iterable<TraceEntry> entries) {
+        final List<String> messages = new ArrayList<>();
+        entries.forEach(entry -> messages.add(entry.getMessage()));
+        return messages;
+    }
+
+    @Test
+    public void keepLevel() {
+        service.trace(Level.ERROR, null, "error %d", 1);
+        for (int i = 0; i < 10; i++) {
+            service.trace(Level.INFO, null, "info %d", i);
+        }
+        service.trace(Level.WARNING, null, "warning %d", 2);
+        service.trace(Level.DEBUG, "/content/test", "debug", Map.of("key", "value"));
+        assertEquals(List.of("error 1", "info 6", "info 7", "info 8", "info 9", "warning 2", "debug"),
+                messages(service.getEntries(null)));
+        assertEquals(1, service.getNumber(Level.ERROR));
+        assertEquals(1, service.getNumber(Level.WARNING));
+        assertEquals(4, service.getNumber(Level.INFO));
+        assertEquals(1, service.getNumber(Level.DEBUG));
+        for (int i = 0; i < 5; i++) {
+            service.trace(Level.ERROR, null, "error %d", i);
+        }
+        assertEquals(3, service.getNumber(Level.ERROR));
+        assertEquals(0, service.getNumber(Level.WARNING));
+        final TraceEntry debug = service.getEntries(Level.DEBUG).iterator().next();
+        assertEquals("debug", debug.getMessage());
+        final TraceEntry info = service.getEntries(null).iterator().next();
+        assertEquals("info 6", info.getMessage());
+        assertTrue(info.getMessage() == info.getMessage()); // formatted once
+    }
+
+    @Test
+    public void formattedMessage() {
+        final AtomicInteger formatted = new AtomicInteger();
+        final Object argument = new Object() {
+            @Override
+            public String toString() {
+                return "argument " + formatted.incrementAndGet();
+            }
+        };
+        service.trace(Level.INFO, null, "message with %s", argument);
+        assertEquals(0, formatted.get()); // formatted on the first access, not by the tracing thread
+        final TraceEntry entry = service.getEntries(null).iterator().next();
+        assertEquals("message with argument 1", entry.getMessage());
+        assertEquals("message with argument 1", entry.getMessage());
+        assertEquals("message with argument 1", toJson(entry).get("message").getAsString());
+        assertEquals(1, formatted.get());
+    }
+
+    @Test
+    public void jsonTime() {
+        final SimpleDateFormat previous = new SimpleDateFormat(DefaultTraceService.DEFAULT_TIME_FORMAT);
+        // a winter time, a summer time and a time with a single digit day and milliseconds
+        for (final long timestamp : new long[]{1704067200000L, 1719835199999L, 1759302245007L}) {
+            final TraceEntry entry = service.new DefaultTraceEntry(timestamp, Level.INFO, null, "entry", null);
+            final JsonObject json = toJson(entry);
+            assertEquals(timestamp, json.get("timestamp").getAsLong());
+            assertEquals(previous.format(new Date(timestamp)), json.get("time").getAsString());
+        }
+    }
+
+    protected JsonObject toJson(TraceEntry entry) {
+        final StringWriter buffer = new StringWriter();
+        try (JsonWriter writer = new JsonWriter(buffer)) {
+            entry.toJson(writer);
+        } catch (IOException ex) {
+            throw new AssertionError(ex);
+        }
+        return new JsonParser().parse(buffer.toString()).getAsJsonObject();
+    }
+
+    @Test
+    public void snapshots() {
+        service.trace(Level.INFO, null, "one");
+        final Iterable<TraceEntry> first = service.getEntries(null);
+        assertTrue(first == service.getEntries(null)); // reused until a new entry is added
+        service.trace(Level.INFO, null, "two");
+        assertEquals(List.of("one"), messages(first));
+        assertEquals(List.of("one", "two"), messages(service.getEntries(null)));
+    }
+
+    @Test
+    public void entriesSince() {
+        for (int i = 0; i < 8; i++) {
+            service.trace(i % 4 == 0 ? Level.ERROR : Level.INFO, null, "entry %d", i);
+        }
+        assertEquals(List.of("entry 0", "entry 2", "entry 3", "entry 4", "entry 5", "entry 6", "entry 7"),
+                messages(service.getEntriesSince(0L)));
+        assertEquals(List.of("entry 5", "entry 6", "entry 7"), messages(service.getEntriesSince(5L)));
+        assertEquals(List.of(), messages(service.getEntriesSince(8L)));
+        service.trace(Level.INFO, null, "entry %d", 8);
+        final TraceEntry next = service.getEntriesSince(8L).iterator().next();
+        assertEquals("entry 8", next.getMessage());
+        assertEquals(9L, next.getSequence());
+    }
+
+    @Test
+    public void subscription() throws InterruptedException {
+        final DefaultTraceManager manager = new DefaultTraceManager();
+        manager.bindTraceService(service);
+        try (TraceManager.Subscription subscription = manager.subscribe("test", 3)) {
+            assertNotNull(subscription);
+            for (int i = 0; i < 5; i++) {
+                manager.trace("test", Level.INFO, null, "entry %d", i);
+            }
+            assertEquals(2L, subscription.getDropped());
+            assertEquals("entry 2", subscription.poll(100L).getMessage());
+            assertEquals("entry 3", subscription.poll(100L).getMessage());
+            assertEquals("entry 4", subscription.poll(100L).getMessage());
+            assertNull(subscription.poll(10L));
+        }
+        service.trace(Level.INFO, null, "closed");
+        assertEquals(0, service.listeners.size());
+    }
+
+    @Test
+    public void persistence() throws IOException, InterruptedException {
+        final Path directory = Files.createTempDirectory("trace");
+        try {
+            service.activate(config("debug", 5, "warning", 3, directory.toString()));
+            service.trace(Level.ERROR, "/content/test", "error %d", 1, Map.of("key", "value"));
+            for (int i = 0; i < 10; i++) {
+                service.trace(Level.INFO, null, "info %d%%", i);
+            }
+            final long timestamp = service.getEntries(null).iterator().next().getTimestamp();
+            service.deactivate();
+            final File[] files = directory.toFile().listFiles();
+            assertNotNull(files);
+            assertEquals(1, files.length);
+            assertEquals(11, Files.readAllLines(files[0].toPath()).size());
+            // the files of another service with the same name prefix are not restored
+            Files.copy(files[0].toPath(), directory.resolve("test.jobs" + files[0].getName().substring(4)));
+            final DefaultTraceService restored = new DefaultTraceService();
+            restored.activate(config("debug", 5, "warning", 3, directory.toString()));
+            // the entries are restored in the background, an entry traced meanwhile is kept after them
+            restored.trace(Level.INFO, null, "live");
+            for (int i = 0; i < 100 && messages(restored.getEntries(null)).size() < 6; i++) {
+                Thread.sleep(50L);
+            }
+            assertEquals(List.of("error 1", "info 6%", "info 7%", "info 8%", "info 9%", "live"),
+                    messages(restored.getEntries(null)));
+            final TraceEntry error = restored.getEntries(null).iterator().next();
+            assertEquals(timestamp, error.getTimestamp());
+            assertEquals("/content/test", error.getReference());
+            assertEquals(1, restored.getNumber(Level.ERROR));
+            restored.deactivate();
+        } finally {
+            for (final File file : directory.toFile().listFiles()) {
+                Files.delete(file.toPath());
+            }
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void optInDefaults() throws NoSuchMethodException {
+        // collapsing and rate limiting are changing the traced entries and must be configured explicitly
+        assertEquals(false, DefaultTraceService.Config.class.getMethod("collapseDuplicates").getDefaultValue());
+        assertEquals(0, DefaultTraceService.Config.class.getMethod("rateLimit").getDefaultValue());
+    }
+
+    @Test
+    public void duplicates() {
+        collapseDuplicates = true;
+        service.activate(config("debug", 5, "warning", 3));
+        service.trace(Level.ERROR, "/content/test", "failed %s", "one");
+        for (int i = 0; i < 100; i++) {
+            service.trace(Level.INFO, "/content/test", "loop %d", i);
+        }
+        service.trace(Level.INFO, "/content/other", "loop %d", 100);
+        service.trace(Level.ERROR, "/content/test", "failed %s", "two");
+        assertEquals(List.of("failed one", "loop 0", "loop 0 (repeated 99 times)", "loop 100", "failed two"),
+                messages(service.getEntries(null)));
+        final TraceEntry loop = service.getEntriesSince(1L).iterator().next();
+        assertEquals(100, loop.getCount());
+        assertTrue(loop.getLastTimestamp() >= loop.getTimestamp());
+        assertEquals(1, service.getEntries(null).iterator().next().getCount());
+        // the end of the run is published to the incremental readers with the number of repetitions
+        final TraceEntry runEnd = service.getEntriesSince(loop.getSequence()).iterator().next();
+        assertEquals(Level.INFO, runEnd.getLevel());
+        assertEquals("/content/test", runEnd.getReference());
+        assertEquals(Integer.valueOf(100), runEnd.getProperty("count", 0));
+    }
+
+    @Test
+    public void rateLimit() throws InterruptedException {
+        rateLimit = 10;
+        service.activate(config("debug", 100, "error", 10));
+        for (int i = 0; i < 50; i++) {
+            service.trace(Level.INFO, null, "entry " + i);
+        }
+        final List<String> limited = messages(service.getEntries(null));
+        assertTrue(limited.size() >= 10 && limited.size() < 20);
+        Thread.sleep(200L);
+        service.trace(Level.INFO, null, "after");
+        final List<String> messages = messages(service.getEntries(null));
+        assertEquals("after", messages.get(messages.size() - 1));
+        assertEquals((50 - limited.size()) + " trace entries suppressed by the rate limit",
+                messages.get(messages.size() - 2));
+    }
+
+    @Test
+    public void rateLimitBelowTraceLevel() throws InterruptedException {
+        rateLimit = 10;
+        service.activate(config("error", 10, "error", 100));
+        for (int i = 0; i < 50; i++) {
+            service.trace(Level.ERROR, null, "entry " + i);
+        }
+        final int limited = messages(service.getEntries(null)).size();
+        Thread.sleep(200L);
+        service.trace(Level.ERROR, null, "after");
+        // the suppression warning is not traced if warnings are not traced
+        assertEquals(limited + 1, messages(service.getEntries(null)).size());
+        for (final TraceEntry entry : service.getEntries(null)) {
+            assertEquals(Level.ERROR, entry.getLevel());
+        }
+    }
+
+    @Test
+    public void concurrentTracing() throws InterruptedException {
+        service.activate(config("debug", 100, "error", 20));
+        final List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 16; t++) {
+            final Level level = Level.values()[t % Level.values().length];
+            final Thread thread = new Thread(() -> {
+                for (int i = 0; i < 5000; i++) {
+                    service.trace(level, null, "entry %d", i);
+                    service.getEntries(null).forEach(TraceEntry::getLevel);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        int total = 0;
+        for (final Level level : Level.values()) {
+            int count = 0;
+            for (final TraceEntry entry : service.getEntries(null)) {
+                if (entry.getLevel() == level) {
+                    count++;
+                }
+            }
+            assertEquals(count, service.getNumber(level));
+            total += count;
+        }
+        assertEquals(120, total);
+    }
+}
@@ -0,0 +1,135 @@
+package com.composum.sling.dashboard.service;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import com.composum.sling.dashboard.service.TraceService.Level;
+import com.composum.sling.dashboard.service.TraceService.TraceEntry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TraceLogAppenderTest {
+
+    protected final DefaultTraceService service = new DefaultTraceService();
+    protected final List<TraceEntry> entries = new ArrayList<>();
+
+    protected TraceLogAppender appender;
+
+    @Before
+    public void setup() {
+        appender = new TraceLogAppender();
+        appender.trace = "test";
+        appender.minLevel = ch.qos.logback.classic.Level.WARN.toInt();
+        appender.queueSize = 3;
+        // the trace entries are created as the trace service would do it
+        appender.traceManager = (TraceManager) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{TraceManager.class}, (proxy, method, args) -> {
+                    if ("trace".equals(method.getName())) {
+                        entries.add(service.new DefaultTraceEntry((Level) args[1], (String) args[2],
+                                (String) args[3], (Object[]) args[4]));
+                    }
+                    return null;
+                });
+    }
+
+    protected static ILoggingEvent event(final ch.qos.logback.classic.Level level, final String logger,
+                                         final String message, final Object... args) {
+        return (ILoggingEvent) Proxy.newProxyInstance(TraceLogAppenderTest.class.getClassLoader(),
+                new Class<?>[]{ILoggingEvent.class}, (proxy, method, methodArgs) -> {
+                    switch (method.getName()) {
+                        case "getLevel":
+                            return level;
+                        case "getLoggerName":
+                            return logger;
+                        case "getMessage":
+                            return message;
+                        case "getArgumentArray":
+                            return args.length > 0 ? args : null;
+                        case "getThreadName":
+                            return "main";
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    protected TraceEntry handover(final String message, final Object... args) {
+        entries.clear();
+        appender.handover(event(ch.qos.logback.classic.Level.ERROR, "com.example.Test", message, args));
+        assertEquals(1, entries.size());
+        return entries.get(0);
+    }
+
+    @Test
+    public void toFormat() {
+        assertEquals("a %s b", TraceLogAppender.toFormat("a {} b", 1));
+        assertEquals("%s%s", TraceLogAppender.toFormat("{}{}", 2));
+        assertEquals("%s{}", TraceLogAppender.toFormat("{}{}", 1));
+        assertEquals("{} %s", TraceLogAppender.toFormat("\\{} {}", 1));
+        assertEquals("100%% %s", TraceLogAppender.toFormat("100% {}", 1));
+        assertEquals("{ } {", TraceLogAppender.toFormat("{ } {", 1));
+    }
+
+    @Test
+    public void toLevel() {
+        assertEquals(Level.ERROR, TraceLogAppender.toLevel(ch.qos.logback.classic.Level.ERROR));
+        assertEquals(Level.WARNING, TraceLogAppender.toLevel(ch.qos.logback.classic.Level.WARN));
+        assertEquals(Level.INFO, TraceLogAppender.toLevel(ch.qos.logback.classic.Level.INFO));
+        assertEquals(Level.DEBUG, TraceLogAppender.toLevel(ch.qos.logback.classic.Level.DEBUG));
+        assertEquals(Level.DEBUG, TraceLogAppender.toLevel(ch.qos.logback.classic.Level.TRACE));
+    }
+
+    @Test
+    public void messages() {
+        assertEquals("disk 100% full", handover("disk 100% full").getMessage());
+        assertEquals("no {} argument", handover("no {} argument").getMessage());
+        assertEquals("disk 100% full: /tmp", handover("disk 100% full: {}", "/tmp").getMessage());
+        assertEquals("a=1, b={}", handover("a={}, b={}", 1).getMessage());
+        final TraceEntry entry = handover("failed: {}", "/tmp");
+        assertEquals("com.example.Test", entry.getReference());
+        assertEquals("com.example.Test", entry.getProperty("logger", ""));
+        assertEquals("main", entry.getProperty("thread", ""));
+        assertNull(entry.getProperty("exception", null));
+    }
+
+    @Test
+    public void throwableArgument() {
+        TraceEntry entry = handover("failed: {}", "/tmp", new IllegalStateException("broken"));
+        assertEquals("failed: /tmp", entry.getMessage());
+        assertTrue(entry.getProperty("exception", "").contains("broken"));
+        entry = handover("failed at 100%", new IllegalStateException("broken"));
+        assertEquals("failed at 100%", entry.getMessage());
+        assertTrue(entry.getProperty("exception", "").contains("IllegalStateException"));
+    }
+
+    @Test
+    public void queueBound() {
+        for (int i = 0; i < 5; i++) {
+            appender.append(event(ch.qos.logback.classic.Level.ERROR, "com.example.Test", "message {}", i));
+        }
+        appender.append(event(ch.qos.logback.classic.Level.INFO, "com.example.Test", "ignored"));
+        appender.append(event(ch.qos.logback.classic.Level.ERROR, "com.composum.sling.dashboard.service.X", "own"));
+        assertEquals(3, appender.queued.get());
+        assertEquals(2, appender.dropped.get());
+        appender.drainQueue();
+        assertEquals(4, entries.size());
+        assertEquals("message 0", entries.get(0).getMessage());
+        assertEquals("message 2", entries.get(2).getMessage());
+        assertEquals(Level.WARNING, entries.get(3).getLevel());
+        assertEquals("2 log events dropped (trace appender queue full)", entries.get(3).getMessage());
+        assertEquals(0, appender.queued.get());
+        // the queue accepts events again after the drain, the drop is reported once only
+        appender.append(event(ch.qos.logback.classic.Level.WARN, "com.example.Test", "again"));
+        entries.clear();
+        appender.drainQueue();
+        assertEquals(1, entries.size());
+        assertFalse(appender.queue.iterator().hasNext());
+    }
+}
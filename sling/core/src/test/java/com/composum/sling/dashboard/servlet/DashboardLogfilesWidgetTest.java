@@ -0,0 +1,354 @@
+package com.composum.sling.dashboard.servlet;
+
+import com.composum.sling.dashboard.service.DefaultLogfileService;
+import com.composum.sling.dashboard.servlet.DashboardLogfilesWidget.LoggerSession;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.request.RequestPathInfo;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class DashboardLogfilesWidgetTest {
+
+    public static final String CONTENT = "*INFO* one\n*INFO* two\n";
+
+    protected Path directory;
+    protected DashboardLogfilesWidget widget;
+    protected final Map<String, Object> sessionAttributes = new HashMap<>();
+    protected final Map<String, String> parameters = new HashMap<>();
+
+    /**
+     * the state of a response, the status is '200' if no status or error is sent
+     */
+    protected static class Response {
+
+        protected int status = HttpServletResponse.SC_OK;
+        protected final Map<String, String> headers = new HashMap<>();
+        protected final StringWriter text = new StringWriter();
+        protected final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        protected final SlingHttpServletResponse proxy = (SlingHttpServletResponse) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[]{SlingHttpServletResponse.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "setStatus":
+                        case "sendError":
+                            status = (Integer) args[0];
+                            return null;
+                        case "setHeader":
+                            headers.put((String) args[0], (String) args[1]);
+                            return null;
+                        case "setDateHeader":
+                            headers.put((String) args[0], DateTimeFormatter.RFC_1123_DATE_TIME.format(
+                                    ZonedDateTime.ofInstant(Instant.ofEpochMilli((Long) args[1]), ZoneOffset.UTC)));
+                            return null;
+                        case "getWriter":
+                            return new PrintWriter(text);
+                        case "getOutputStream":
+                            return new ServletOutputStream() {
+                                @Override
+                                public void write(int b) {
+                                    bytes.write(b);
+                                }
+                            };
+                        default:
+                            return null;
+                    }
+                });
+
+        public String getContent() {
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Before
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("logs");
+        Files.write(directory.resolve("error.log"), CONTENT.getBytes(StandardCharsets.UTF_8));
+        widget = new DashboardLogfilesWidget() {
+            @Override
+            protected @NotNull File getFile(@NotNull final String path) {
+                return directory.resolve(path.startsWith("/") ? path.substring(1) : path).toFile();
+            }
+        };
+        widget.logfileService = new DefaultLogfileService();
+        widget.logFiles = List.of("/error.log");
+        widget.errorPattern = Pattern.compile("\\*ERROR\\*");
+        widget.warningPattern = Pattern.compile("\\*WARN\\*");
+        widget.sizeLimit = 100;
+        widget.streamMax = 1;
+        widget.streamTimeout = 100L;
+        widget.searchLimit = 1000;
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        final File[] files = directory.toFile().listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                Files.delete(file.toPath());
+            }
+        }
+        Files.delete(directory);
+    }
+
+    protected void append(String content) throws IOException {
+        Files.write(directory.resolve("error.log"), content.getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+    }
+
+    protected SlingHttpServletRequest request(final String suffix, final String... headers) {
+        final Map<String, String> headerMap = new HashMap<>();
+        for (int i = 0; i + 1 < headers.length; i += 2) {
+            headerMap.put(headers[i], headers[i + 1]);
+        }
+        final HttpSession session = (HttpSession) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{HttpSession.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getAttribute":
+                            return sessionAttributes.get(args[0]);
+                        case "setAttribute":
+                            sessionAttributes.put((String) args[0], args[1]);
+                            return null;
+                        default:
+                            return null;
+                    }
+                });
+        final Map<String, Object> attributes = new HashMap<>();
+        final RequestPathInfo pathInfo = (RequestPathInfo) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{RequestPathInfo.class},
+                (proxy, method, args) -> "getSuffix".equals(method.getName()) ? suffix : null);
+        return (SlingHttpServletRequest) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{SlingHttpServletRequest.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getRequestPathInfo":
+                            return pathInfo;
+                        case "getSession":
+                            return session;
+                        case "getAttribute":
+                            return attributes.get(args[0]);
+                        case "setAttribute":
+                            attributes.put((String) args[0], args[1]);
+                            return null;
+                        case "getParameter":
+                            return parameters.get(args[0]);
+                        case "getHeader":
+                            return headerMap.get(args[0]);
+                        case "getDateHeader":
+                            final String value = headerMap.get(args[0]);
+                            return value != null ? ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME)
+                                    .toInstant().toEpochMilli() : -1L;
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    protected LoggerSession getLoggerSession() {
+        final LoggerSession session = widget.getLoggerSession(request("/error.log"), "/error.log", false);
+        assertNotNull(session);
+        session.summarize();
+        return session;
+    }
+
+    protected String stream(final String lastEventId) throws IOException, InterruptedException {
+        final StringWriter events = new StringWriter();
+        getLoggerSession().stream(new PrintWriter(events), lastEventId, 100L);
+        return events.toString();
+    }
+
+    protected void assertEvents(String expected, String events) {
+        assertTrue(events, events.startsWith("retry: 3000\n\n" + expected));
+        // the stream is closed by the timeout, heartbeats are sent only if nothing has been changed
+        assertTrue(events, events.substring(("retry: 3000\n\n" + expected).length()).matches("(:\n\n)*"));
+    }
+
+    @Test
+    public void logfilesPerRequest() throws IOException {
+        widget.logFiles = List.of("/error.log", "/error.log.*");
+        final SlingHttpServletRequest request = request(null);
+        assertEquals(List.of("/error.log"), widget.getLogfiles(request));
+        Files.write(directory.resolve("error.log.1"), CONTENT.getBytes(StandardCharsets.UTF_8));
+        // the globs are resolved once per request
+        assertEquals(List.of("/error.log"), widget.getLogfiles(request));
+        assertEquals(List.of("/error.log", "/error.log.1"), widget.getLogfiles(request(null)));
+    }
+
+    protected Response download(String suffix, String... headers) throws IOException {
+        final Response response = new Response();
+        widget.download(request(suffix, headers), response.proxy);
+        return response;
+    }
+
+    @Test
+    public void download() throws IOException {
+        Files.setLastModifiedTime(directory.resolve("error.log"),
+                FileTime.from(Instant.parse("2026-10-17T10:00:00Z")));
+        final String lastModified = "Sat, 17 Oct 2026 10:00:00 GMT";
+        Response response = download("/error.log");
+        assertEquals(HttpServletResponse.SC_OK, response.status);
+        assertEquals(CONTENT, response.getContent());
+        assertEquals("bytes", response.headers.get("Accept-Ranges"));
+        assertEquals(lastModified, response.headers.get("Last-Modified"));
+        final String etag = response.headers.get("ETag");
+        assertNotNull(etag);
+        // a single range
+        response = download("/error.log", "Range", "bytes=0-9");
+        assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.status);
+        assertEquals("*INFO* one", response.getContent());
+        assertEquals("bytes 0-9/22", response.headers.get("Content-Range"));
+        response = download("/error.log", "Range", "bytes=11-");
+        assertEquals("*INFO* two\n", response.getContent());
+        // a suffix range - the last n bytes
+        response = download("/error.log", "Range", "bytes=-4");
+        assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.status);
+        assertEquals("two\n", response.getContent());
+        assertEquals("bytes 18-21/22", response.headers.get("Content-Range"));
+        // an unsatisfiable range
+        response = download("/error.log", "Range", "bytes=22-30");
+        assertEquals(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE, response.status);
+        assertEquals("bytes */22", response.headers.get("Content-Range"));
+        assertEquals("", response.getContent());
+        // multiple ranges are delivered as the complete content
+        response = download("/error.log", "Range", "bytes=0-1,4-5");
+        assertEquals(HttpServletResponse.SC_OK, response.status);
+        assertEquals(CONTENT, response.getContent());
+    }
+
+    @Test
+    public void conditionalDownload() throws IOException {
+        Files.setLastModifiedTime(directory.resolve("error.log"),
+                FileTime.from(Instant.parse("2026-10-17T10:00:00Z")));
+        final String etag = download("/error.log").headers.get("ETag");
+        // the range is valid for the current content only
+        Response response = download("/error.log", "Range", "bytes=11-", "If-Range", etag);
+        assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.status);
+        assertEquals("*INFO* two\n", response.getContent());
+        response = download("/error.log", "Range", "bytes=11-",
+                "If-Range", "Sat, 17 Oct 2026 10:00:00 GMT");
+        assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.status);
+        append("*WARN* three\n");
+        Files.setLastModifiedTime(directory.resolve("error.log"),
+                FileTime.from(Instant.parse("2026-10-17T10:05:00Z")));
+        response = download("/error.log", "Range", "bytes=11-", "If-Range", etag);
+        assertEquals(HttpServletResponse.SC_OK, response.status);
+        assertEquals(CONTENT + "*WARN* three\n", response.getContent());
+        assertTrue(!etag.equals(response.headers.get("ETag")));
+        // not modified since
+        response = download("/error.log", "If-Modified-Since", "Sat, 17 Oct 2026 10:05:00 GMT");
+        assertEquals(HttpServletResponse.SC_NOT_MODIFIED, response.status);
+        assertEquals("", response.getContent());
+        response = download("/error.log", "If-Modified-Since", "Sat, 17 Oct 2026 10:04:59 GMT");
+        assertEquals(HttpServletResponse.SC_OK, response.status);
+        assertEquals(CONTENT + "*WARN* three\n", response.getContent());
+    }
+
+    @Test
+    public void downloadNotConfigured() throws IOException {
+        Files.write(directory.resolve("other.log"), CONTENT.getBytes(StandardCharsets.UTF_8));
+        assertEquals(HttpServletResponse.SC_NOT_FOUND, download("/other.log").status);
+        assertEquals(HttpServletResponse.SC_NOT_FOUND, download("/../error.log").status);
+        assertEquals(HttpServletResponse.SC_NOT_FOUND, download(null).status);
+        Files.delete(directory.resolve("error.log"));
+        assertEquals(HttpServletResponse.SC_NOT_FOUND, download("/error.log").status);
+        Files.write(directory.resolve("error.log"), CONTENT.getBytes(StandardCharsets.UTF_8));
+    }
+
+    protected JsonObject search(String pattern, int limit, long position) throws IOException {
+        parameters.put("pattern", pattern);
+        parameters.put("limit", String.valueOf(limit));
+        parameters.put("position", String.valueOf(position));
+        final Response response = new Response();
+        widget.jsonSearch(request("/error.log"), response.proxy, getLoggerSession());
+        return new JsonParser().parse(response.text.toString()).getAsJsonObject();
+    }
+
+    @Test
+    public void searchPages() throws IOException {
+        JsonObject page = search("INFO", 1, 0);
+        assertEquals(1, page.getAsJsonArray("hits").size());
+        assertEquals(11, page.get("next").getAsLong());
+        assertFalse(page.get("complete").getAsBoolean());
+        // the last hit is the last line of the file, the page is complete with exactly 'limit' hits
+        page = search("INFO", 1, 11);
+        assertEquals("*INFO* two", page.getAsJsonArray("hits").get(0).getAsJsonObject().get("line").getAsString());
+        assertEquals(22, page.get("next").getAsLong());
+        assertTrue(page.get("complete").getAsBoolean());
+        page = search("ERROR", 10, 0);
+        assertEquals(0, page.getAsJsonArray("hits").size());
+        assertTrue(page.get("complete").getAsBoolean());
+    }
+
+    @Test
+    public void streamEvents() throws Exception {
+        assertEvents("data: *INFO* one\ndata: *INFO* two\nid: 0:22\n\n", stream(null));
+        // the view of the session is continued at the position of the last event
+        final StringWriter view = new StringWriter();
+        getLoggerSession().dump(new PrintWriter(view), false);
+        assertEquals("", view.toString());
+        append("*WARN* three\r\n");
+        assertEvents("data: *WARN* three\nid: 0:36\n\n", stream(null));
+    }
+
+    @Test
+    public void streamResume() throws Exception {
+        assertEvents("data: *INFO* two\nid: 0:22\n\n", stream("0:11"));
+        assertEvents("", stream("0:22"));
+        // an invalid event id is ignored, the stream continues the view of the session
+        assertEvents("", stream("invalid"));
+        assertEvents("data: *INFO* one\ndata: *INFO* two\nid: 0:22\n\n", stream("0:-1"));
+    }
+
+    @Test
+    public void streamMax() throws IOException {
+        final Response rejected = new Response();
+        widget.streamCount.set(1);
+        widget.streamTail(request("/error.log"), rejected.proxy);
+        assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, rejected.status);
+        assertEquals(1, widget.streamCount.get());
+        widget.streamCount.set(0);
+        getLoggerSession(); // the index is updated by the poller of the logfile service otherwise
+        final Response accepted = new Response();
+        widget.streamTail(request("/error.log", "Last-Event-ID", "0:11"), accepted.proxy);
+        assertEquals(HttpServletResponse.SC_OK, accepted.status);
+        assertEquals("no-cache", accepted.headers.get("Cache-Control"));
+        assertTrue(accepted.text.toString().startsWith("retry: 3000\n\ndata: *INFO* two\nid: 0:22\n\n"));
+        assertEquals(0, widget.streamCount.get());
+        final Response unknown = new Response();
+        widget.streamTail(request("/other.log"), unknown.proxy);
+        assertEquals(HttpServletResponse.SC_NOT_FOUND, unknown.status);
+        assertEquals(0, widget.streamCount.get());
+    }
+}
@@ -0,0 +1,120 @@
+package com.composum.sling.dashboard.util;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+public class LogfileReaderTest {
+
+    protected Path createLogfile(String content) throws IOException {
+        final Path file = Files.createTempFile("logfile", ".log");
+        file.toFile().deleteOnExit();
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    protected List<String> readLines(Path file, int bufferSize, long position, long[] end) throws IOException {
+        final List<String> lines = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            end[0] = new LogfileReader(bufferSize).read(channel, position,
+                    (line, linePosition) -> lines.add(linePosition + ":" + line));
+        }
+        return lines;
+    }
+
+    @Test
+    public void chunkedLineSplitting() throws IOException {
+        final Path file = createLogfile("first line\r\nsecond line with ümläüts\n\nlast\n");
+        final long[] end = new long[1];
+        for (int bufferSize : new int[]{1, 3, 7, 16, 1024}) {
+            final List<String> lines = readLines(file, bufferSize, 0, end);
+            assertEquals(4, lines.size());
+            assertEquals("0:first line", lines.get(0));
+            assertEquals("12:second line with ümläüts", lines.get(1));
+            assertEquals("40:", lines.get(2));
+            assertEquals("41:last", lines.get(3));
+            assertEquals(Files.size(file), end[0]);
+        }
+    }
+
+    @Test
+    public void incompleteLastLine() throws IOException {
+        final Path file = createLogfile("one\ntwo\nthree");
+        final long[] end = new long[1];
+        List<String> lines = readLines(file, 4, 0, end);
+        assertEquals(2, lines.size());
+        assertEquals(8L, end[0]);
+        lines = readLines(file, 4, end[0], end);
+        assertEquals(0, lines.size());
+        assertEquals(8L, end[0]);
+    }
+
+    @Test
+    public void findLineStart() throws IOException {
+        final Random random = new Random(4711);
+        final StringBuilder content = new StringBuilder();
+        while (content.length() < 3 * LogfileReader.SCAN_WINDOW_SIZE) {
+            // a few short lines and some lines longer than the scan window
+            final int length = random.nextInt(10) == 0 ? random.nextInt(2 * LogfileReader.SCAN_WINDOW_SIZE)
+                    : random.nextInt(40);
+            content.append("x".repeat(length)).append('\n');
+        }
+        final Path file = createLogfile(content.toString());
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            for (int i = 0; i < 2000; i++) {
+                final int position = random.nextInt(content.length() + 1);
+                assertEquals(content.lastIndexOf("\n", position - 1) + 1,
+                        LogfileReader.findLineStart(channel, position));
+            }
+            assertEquals(0L, LogfileReader.findLineStart(channel, 0));
+            assertEquals(content.length(), LogfileReader.findLineStart(channel, content.length()));
+        }
+    }
+
+    /**
+     * a throughput comparison with 'RandomAccessFile.readLine()',
+     * enabled via '-Dlogfile.benchmark.mb=2000' (size of the generated log in MB)
+     */
+    @Test
+    public void benchmark() throws IOException {
+        final int sizeMb = Integer.getInteger("logfile.benchmark.mb", 0);
+        assumeTrue(sizeMb > 0);
+        final File file = File.createTempFile("benchmark", ".log");
+        file.deleteOnExit();
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            final String line = "17.10.2026 12:34:56.789 *INFO* [qtp-4711] com.example.Service a typical message\n";
+            for (long size = 0; size < sizeMb * 1024L * 1024L; size += line.length()) {
+                writer.write(line);
+            }
+        }
+        long time = System.currentTimeMillis();
+        long count = 0;
+        try (RandomAccessFile fileAccess = new RandomAccessFile(file, "r")) {
+            while (fileAccess.readLine() != null) {
+                count++;
+            }
+        }
+        System.out.printf("RandomAccessFile.readLine(): %d lines in %d ms%n", count, System.currentTimeMillis() - time);
+        time = System.currentTimeMillis();
+        final long[] lines = new long[1];
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            new LogfileReader().read(channel, 0, (line, position) -> lines[0]++);
+        }
+        System.out.printf("LogfileReader.read(): %d lines in %d ms%n", lines[0], System.currentTimeMillis() - time);
+        assertEquals(count, lines[0]);
+    }
+}
@@ -0,0 +1,137 @@
+package com.composum.sling.dashboard.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class PathReferenceScannerTest {
+
+    public static final Pattern PATH_PATTERN = Pattern.compile("^/[^<>]+$");
+    public static final Pattern PATH_EMBEDDED = Pattern.compile("\"(?<path>/[^<>\"]+)\"");
+
+    protected final PathReferenceScanner scanner = new PathReferenceScanner("<>");
+
+    /**
+     * the regex based reference scan replaced by the scanner
+     */
+    protected static void findPaths(String value, List<String> paths) {
+        if (PATH_PATTERN.matcher(value).matches()) {
+            paths.add(value);
+        } else {
+            final Matcher matcher = PATH_EMBEDDED.matcher(value);
+            int pos = 0;
+            while (pos < value.length() && matcher.find(pos)) {
+                paths.add(matcher.group("path"));
+                pos = matcher.end();
+            }
+        }
+    }
+
+    protected static String richText(Random random) {
+        final StringBuilder text = new StringBuilder("<div class=\"text\">");
+        for (int p = random.nextInt(5); p >= 0; p--) {
+            text.append("<p>Lorem ipsum dolor sit amet, <b>consectetur</b> adipiscing elit, \"quoted\" 50% / 100% ");
+            switch (random.nextInt(4)) {
+                case 0:
+                    text.append("<a href=\"/content/site/en/page-").append(random.nextInt(1000))
+                            .append(".html\" target=\"_blank\">link</a>");
+                    break;
+                case 1:
+                    text.append("<img src=\"/content/dam/site/image-").append(random.nextInt(1000))
+                            .append(".png\" alt=\"/\"/>");
+                    break;
+                case 2:
+                    text.append("<span data-ref=\"/content/site/<invalid>\">\"/\"</span>");
+                    break;
+                default:
+                    text.append("sed do eiusmod tempor incididunt ut labore et dolore magna aliqua.");
+            }
+            text.append("</p>");
+        }
+        return text.append("</div>").toString();
+    }
+
+    protected List<String> scan(String value) {
+        final List<String> paths = new ArrayList<>();
+        scanner.findPaths(value, paths);
+        return paths;
+    }
+
+    protected List<String> regex(String value) {
+        final List<String> paths = new ArrayList<>();
+        findPaths(value, paths);
+        return paths;
+    }
+
+    @Test
+    public void paths() {
+        assertTrue(scanner.isPath("/content/site"));
+        assertTrue(scanner.isPath("/a"));
+        assertFalse(scanner.isPath("/"));
+        assertFalse(scanner.isPath("content/site"));
+        assertFalse(scanner.isPath("/content/<site>"));
+        assertEquals(List.of("/content/site"), scan("/content/site"));
+        assertEquals(List.of("/a", "/b/c"), scan("<a href=\"/a\">\"/\"</a><img src=\"/b/c\">"));
+        assertEquals(List.of("/c"), scan("\"/a<b\" \"/c\" \"/d"));
+        for (final String value : new String[]{"", "\"", "\"/", "\"/\"", "\"/x\"", "x\"/x\"\"/y\"", "\"\"/a\"", "\"/a>\"/b\""}) {
+            assertEquals(value, regex(value), scan(value));
+        }
+    }
+
+    @Test
+    public void richText() {
+        final Random random = new Random(4711L);
+        for (int i = 0; i < 1000; i++) {
+            final String value = richText(random);
+            assertEquals(value, regex(value), scan(value));
+        }
+    }
+
+    @Test
+    public void replace() {
+        assertNull(scanner.replaceQuotedPaths("<a href=\"/x\">\"/y\"</a>", path -> null));
+        assertEquals("<a href=\"/target/x\">\"/y\"</a><img src=\"/target/z\"/>",
+                scanner.replaceQuotedPaths("<a href=\"/source/x\">\"/y\"</a><img src=\"/source/z\"/>",
+                        path -> path.startsWith("/source/") ? "/target" + path.substring(7) : null));
+    }
+
+    /**
+     * enabled via '-Dpathscanner.benchmark.ops=1000000' (number of values scanned per run)
+     */
+    @Test
+    public void benchmark() {
+        final int operations = Integer.getInteger("pathscanner.benchmark.ops", 0);
+        assumeTrue(operations > 0);
+        final Random random = new Random(4711L);
+        final String[] values = new String[1000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = richText(random);
+        }
+        for (int run = 0; run < 5; run++) {
+            final List<String> paths = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int i = 0; i < operations; i++) {
+                findPaths(values[i % values.length], paths);
+                paths.clear();
+            }
+            final long regex = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < operations; i++) {
+                scanner.findPaths(values[i % values.length], paths);
+                paths.clear();
+            }
+            final long scan = System.nanoTime() - start;
+            System.out.printf("run %d: regex %6d ms, scanner %6d ms%n", run, regex / 1000000L, scan / 1000000L);
+        }
+    }
+}
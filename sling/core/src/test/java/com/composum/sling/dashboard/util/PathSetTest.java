@@ -0,0 +1,97 @@
+package com.composum.sling.dashboard.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PathSetTest {
+
+    @Test
+    public void paths() {
+        final PathSet paths = new PathSet();
+        assertTrue(paths.add("/a-b"));
+        assertTrue(paths.add("/a/b"));
+        assertTrue(paths.add("/a"));
+        assertTrue(paths.add("/"));
+        assertFalse(paths.add("/a/b"));
+        assertEquals(4, paths.size());
+        assertTrue(paths.contains("/a"));
+        assertTrue(paths.contains("/a/b/"));
+        assertFalse(paths.contains("/a/b/c"));
+        assertFalse(paths.contains("/b"));
+        assertFalse(paths.contains(null));
+        // tree order: a parent before its children
+        assertEquals(List.of("/", "/a", "/a/b", "/a-b"), new ArrayList<>(paths));
+        assertTrue(paths.remove("/a"));
+        assertFalse(paths.remove("/a"));
+        assertFalse(paths.contains("/a"));
+        assertTrue(paths.contains("/a/b"));
+        assertEquals(List.of("/", "/a/b", "/a-b"), new ArrayList<>(paths));
+        paths.clear();
+        assertTrue(paths.isEmpty());
+        assertFalse(paths.iterator().hasNext());
+    }
+
+    @Test
+    public void collapse() {
+        final PathSet paths = new PathSet();
+        paths.add("/content/site");
+        paths.add("/content/site/en");
+        paths.add("/content/site/en/page");
+        paths.add("/content/dam");
+        paths.collapse("/content/site");
+        assertEquals(2, paths.size());
+        assertEquals(List.of("/content/dam", "/content/site"), new ArrayList<>(paths));
+        assertTrue(paths.contains("/content/site/en/page"));
+        assertTrue(paths.contains("/content/site/de"));
+        assertFalse(paths.contains("/content"));
+        assertFalse(paths.add("/content/site/de"));
+        assertFalse(paths.remove("/content/site/en"));
+        paths.collapse("/content/other");
+        assertEquals(3, paths.size());
+        assertTrue(paths.contains("/content/other/x"));
+        assertTrue(paths.isCollapsedBelow("/content/site/en"));
+        assertFalse(paths.isCollapsedBelow("/content/site"));
+        assertFalse(paths.isCollapsedBelow("/content/dam/x"));
+        assertFalse(paths.isCollapsedBelow("/content"));
+    }
+
+    @Test
+    public void treeOrder() {
+        final List<String> sorted = new ArrayList<>(List.of("/a-b", "/a/b/c", "/b", "/a", "/a/b", "/a0", "/"));
+        sorted.sort(PathSet.TREE_ORDER);
+        assertEquals(List.of("/", "/a", "/a/b", "/a/b/c", "/a-b", "/a0", "/b"), sorted);
+        final PathSet paths = new PathSet();
+        paths.addAll(sorted);
+        assertEquals(sorted, new ArrayList<>(paths));
+    }
+
+    @Test
+    public void randomized() {
+        final Random random = new Random(4711L);
+        final PathSet paths = new PathSet();
+        final TreeSet<String> expected = new TreeSet<>();
+        for (int i = 0; i < 10000; i++) {
+            final StringBuilder path = new StringBuilder();
+            for (int depth = random.nextInt(5); depth >= 0; depth--) {
+                path.append("/n").append(random.nextInt(4));
+            }
+            if (random.nextInt(4) == 0) {
+                assertEquals(path.toString(), expected.remove(path.toString()), paths.remove(path.toString()));
+            } else {
+                assertEquals(path.toString(), expected.add(path.toString()), paths.add(path.toString()));
+            }
+            assertEquals(expected.size(), paths.size());
+        }
+        // the segment names have the same length, so the tree order is the string order here
+        assertEquals(new ArrayList<>(expected), new ArrayList<>(paths));
+        assertEquals(expected, paths);
+    }
+}
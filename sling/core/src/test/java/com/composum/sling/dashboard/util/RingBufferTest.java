@@ -0,0 +1,135 @@
+package com.composum.sling.dashboard.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.IntConsumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class RingBufferTest {
+
+    @Test
+    public void singleProducer() {
+        final RingBuffer<Integer> buffer = new RingBuffer<>(3);
+        assertEquals(0, buffer.snapshot().size());
+        assertEquals(null, buffer.add(1));
+        assertEquals(null, buffer.add(2));
+        assertEquals(List.of(1, 2), buffer.snapshot());
+        assertEquals(null, buffer.add(3));
+        assertEquals(Integer.valueOf(1), buffer.add(4));
+        assertEquals(Integer.valueOf(2), buffer.add(5));
+        assertEquals(List.of(3, 4, 5), buffer.snapshot());
+        assertEquals(5, buffer.getCount());
+        final RingBuffer<Integer> disabled = new RingBuffer<>(0);
+        assertEquals(Integer.valueOf(1), disabled.add(1));
+        assertEquals(0, disabled.snapshot().size());
+    }
+
+    @Test
+    public void concurrentProducers() throws InterruptedException {
+        for (final int threads : new int[]{1, 4, 16, 64}) {
+            final RingBuffer<Long> buffer = new RingBuffer<>(100);
+            final int perThread = 10000;
+            run(threads, thread -> {
+                for (int i = 0; i < perThread; i++) {
+                    buffer.add(((long) thread << 32) | i);
+                }
+            });
+            final List<Long> snapshot = buffer.snapshot();
+            assertEquals((long) threads * perThread, buffer.getCount());
+            assertEquals(100, snapshot.size());
+            assertEquals(100, new HashSet<>(snapshot).size());
+            // the elements of each producer are kept in the order of their creation
+            final long[] last = new long[threads];
+            for (final Long element : snapshot) {
+                final int thread = (int) (element >> 32);
+                final long value = element & 0xffffffffL;
+                assertTrue(value >= last[thread]);
+                last[thread] = value;
+            }
+        }
+    }
+
+    @Test
+    public void concurrentSnapshots() throws InterruptedException {
+        final RingBuffer<Integer> buffer = new RingBuffer<>(50);
+        final Set<String> failures = new HashSet<>();
+        run(8, thread -> {
+            for (int i = 0; i < 20000; i++) {
+                if (thread % 2 == 0) {
+                    buffer.add(i);
+                } else if (buffer.snapshot().size() > 50) {
+                    synchronized (failures) {
+                        failures.add("snapshot exceeds the capacity");
+                    }
+                }
+            }
+        });
+        assertEquals(0, failures.size());
+        assertEquals(50, buffer.snapshot().size());
+    }
+
+    /**
+     * a throughput comparison with a synchronized list for 1 to 64 producer threads,
+     * enabled via '-Dringbuffer.benchmark.ops=10000000' (number of elements added per run)
+     */
+    @Test
+    public void benchmark() throws InterruptedException {
+        final int operations = Integer.getInteger("ringbuffer.benchmark.ops", 0);
+        assumeTrue(operations > 0);
+        for (final int threads : new int[]{1, 2, 4, 8, 16, 32, 64}) {
+            final int perThread = operations / threads;
+            final List<Object> list = new ArrayList<>();
+            long time = System.nanoTime();
+            run(threads, thread -> {
+                for (int i = 0; i < perThread; i++) {
+                    synchronized (list) {
+                        list.add(thread);
+                        if (list.size() > 100) {
+                            list.remove(0);
+                        }
+                    }
+                }
+            });
+            final long locked = System.nanoTime() - time;
+            final RingBuffer<Object> buffer = new RingBuffer<>(100);
+            time = System.nanoTime();
+            run(threads, thread -> {
+                for (int i = 0; i < perThread; i++) {
+                    buffer.add(thread);
+                }
+            });
+            final long lockFree = System.nanoTime() - time;
+            System.out.printf("%2d threads: synchronized list %6d ms, ring buffer %6d ms%n",
+                    threads, locked / 1000000L, lockFree / 1000000L);
+        }
+    }
+
+    protected void run(int threads, IntConsumer producer) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> running = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            final int thread = i;
+            final Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                    producer.accept(thread);
+                } catch (InterruptedException ignore) {
+                }
+            });
+            worker.start();
+            running.add(worker);
+        }
+        start.countDown();
+        for (final Thread worker : running) {
+            worker.join();
+        }
+    }
+}